@@ -7,6 +7,8 @@ import dao.UserDAO;
 import dao.NotificationDAO;
 import dao.PromotionDAO;
 import dto.BookingDTO;
+import dto.BookingTransitionDTO;
+import dto.EmailOutboxDTO;
 import dto.ContactMessageDTO;
 import dto.RoomDTO;
 import dto.UserDTO;
@@ -28,6 +30,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -35,7 +40,8 @@ import java.util.stream.Collectors;
 import utils.EmailUtils;
 
 @WebServlet(name = "AdminController", urlPatterns = {
-    "/admin/users", "/admin/rooms", "/admin/bookings", "/admin/statistics", "/admin/messages", "/admin/promotions"
+    "/admin/users", "/admin/rooms", "/admin/bookings", "/admin/statistics", "/admin/messages", "/admin/promotions",
+    "/admin/broadcast"
 })
 public class AdminController extends HttpServlet {
 
@@ -46,10 +52,28 @@ public class AdminController extends HttpServlet {
     private static final String ADMIN_STATISTICS_PAGE = "/admin/statistics.jsp";
     private static final String ADMIN_MESSAGES_PAGE = "/admin/messages.jsp";
     private static final String ADMIN_PROMOTIONS_PAGE = "/admin/promotions.jsp";
+    private static final String ADMIN_BROADCAST_PAGE = "/admin/broadcast.jsp";
     private static final String EMAIL_PATTERN = "^[A-Za-z0-9+_.-]+@(.+)$";
     private static final String PHONE_PATTERN = "^\\+?[0-9]{9,12}$";
     private static final Logger LOGGER = Logger.getLogger(AdminController.class.getName());
     private final SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy");
+    // Gửi thông báo cho tất cả người dùng có thể mất vài phút nên chạy nền, mỗi lúc một lượt
+    private final AtomicBoolean broadcasting = new AtomicBoolean();
+    private ExecutorService broadcastExecutor;
+
+    @Override
+    public void init() throws ServletException {
+        broadcastExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "homestay-notification-broadcast");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        broadcastExecutor.shutdownNow();
+    }
 
     protected void processRequest(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException, Exception {
@@ -396,7 +420,6 @@ public class AdminController extends HttpServlet {
             }
         } else if ("/admin/bookings".equals(path)) {
             BookingDAO bookingDAO = new BookingDAO();
-            NotificationDAO notificationDAO = new NotificationDAO(); // Khởi tạo NotificationDAO
             if (action == null || action.isEmpty()) {
                 try {
                     List<BookingDTO> bookingList = bookingDAO.getAllBookings();
@@ -416,43 +439,27 @@ public class AdminController extends HttpServlet {
                         String confirmBookingIdStr = request.getParameter("bookingId");
                         try {
                             int bookingId = Integer.parseInt(confirmBookingIdStr);
-                            BookingDTO booking = bookingDAO.getBookingById(bookingId);
-                            if (booking != null) {
-                                if (BookingDAO.STATUS_PAID.equals(booking.getStatus())) {
-                                    if (bookingDAO.updateBookingStatus(bookingId, BookingDAO.STATUS_CONFIRMED)) {
-                                        // Gửi email thông báo xác nhận đặt phòng
-                                        boolean emailSent = EmailUtils.sendAdminConfirmationEmail(
-                                                booking.getUser().getGmail(),
-                                                booking.getUser().getFullName(),
-                                                String.valueOf(bookingId),
-                                                booking.getRoom().getName(),
-                                                sdf.format(booking.getCheckInDate()),
-                                                sdf.format(booking.getCheckOutDate())
-                                        );
-                                        if (!emailSent) {
-                                            LOGGER.log(Level.WARNING, "Failed to send confirmation email to: " + booking.getUser().getGmail());
-                                        }
-
-                                        // Gửi thông báo qua hệ thống cho người dùng
-                                        String userMessage = "Đặt phòng '" + booking.getRoom().getName() + "' (ID: " + bookingId + ") của bạn đã được xác nhận từ "
-                                                + sdf.format(booking.getCheckInDate()) + " đến " + sdf.format(booking.getCheckOutDate()) + ".";
-                                        NotificationDTO userNotification = new NotificationDTO(0, booking.getUser().getUserID(), userMessage, null, false);
-                                        notificationDAO.addNotification(userNotification);
-
-                                        // Gửi thông báo qua hệ thống cho admin
-                                        String adminMessage = "Bạn đã xác nhận đặt phòng (ID: " + bookingId + ") cho phòng '" + booking.getRoom().getName() + "'.";
-                                        NotificationDTO adminNotification = new NotificationDTO(0, user.getUserID(), adminMessage, null, false);
-                                        notificationDAO.addNotification(adminNotification);
-
-                                        request.setAttribute("successMessage", "Xác nhận đặt phòng thành công!");
-                                    } else {
-                                        request.setAttribute("errorMessage", "Cập nhật trạng thái đặt phòng thất bại!");
-                                    }
-                                } else {
-                                    request.setAttribute("errorMessage", "Chỉ có thể xác nhận đặt phòng đã thanh toán!");
-                                }
-                            } else {
+                            // Paid -> Confirmed bằng một câu compare-and-set; email và thông báo ghi cùng transaction
+                            BookingTransitionDTO confirmed = bookingDAO.transition(bookingId, BookingDAO.STATUS_PAID, BookingDAO.STATUS_CONFIRMED, t -> {
+                                String checkIn = sdf.format(t.getCheckInDate());
+                                String checkOut = sdf.format(t.getCheckOutDate());
+                                t.setEmail(new EmailOutboxDTO(t.getGmail(), EmailUtils.TYPE_ADMIN_CONFIRMATION)
+                                        .with("fullName", t.getFullName())
+                                        .with("bookingId", String.valueOf(bookingId))
+                                        .with("roomDetails", t.getRoomName())
+                                        .with("checkInDate", checkIn)
+                                        .with("checkOutDate", checkOut));
+                                // Thông báo cho người dùng và cho admin đã xác nhận
+                                t.addNotification(t.getUserId(), "Đặt phòng '" + t.getRoomName() + "' (ID: " + bookingId + ") của bạn đã được xác nhận từ "
+                                        + checkIn + " đến " + checkOut + ".");
+                                t.addNotification(user.getUserID(), "Bạn đã xác nhận đặt phòng (ID: " + bookingId + ") cho phòng '" + t.getRoomName() + "'.");
+                            });
+                            if (confirmed != null) {
+                                request.setAttribute("successMessage", "Xác nhận đặt phòng thành công!");
+                            } else if (bookingDAO.getStatus(bookingId) == null) {
                                 request.setAttribute("errorMessage", "Không tìm thấy đặt phòng để xác nhận!");
+                            } else {
+                                request.setAttribute("errorMessage", "Chỉ có thể xác nhận đặt phòng đã thanh toán!");
                             }
                         } catch (NumberFormatException e) {
                             request.setAttribute("errorMessage", "ID đặt phòng không hợp lệ!");
@@ -466,19 +473,18 @@ public class AdminController extends HttpServlet {
                         String cancelBookingIdStr = request.getParameter("bookingId");
                         try {
                             int bookingId = Integer.parseInt(cancelBookingIdStr);
-                            BookingDTO booking = bookingDAO.getBookingById(bookingId);
-                            if (booking != null) {
-                                if (!BookingDAO.STATUS_CANCELLED.equals(booking.getStatus())) {
-                                    if (bookingDAO.cancelBooking(bookingId)) {
-                                        request.setAttribute("successMessage", "Hủy đặt phòng thành công!");
-                                    } else {
-                                        request.setAttribute("errorMessage", "Hủy đặt phòng thất bại!");
-                                    }
-                                } else {
+                            if (bookingDAO.transition(bookingId, null, BookingDAO.STATUS_CANCELLED) != null) {
+                                request.setAttribute("successMessage", "Hủy đặt phòng thành công!");
+                            } else {
+                                // Chỉ đọc lại trạng thái khi thất bại để chọn thông báo lỗi
+                                String status = bookingDAO.getStatus(bookingId);
+                                if (status == null) {
+                                    request.setAttribute("errorMessage", "Không tìm thấy đặt phòng để hủy!");
+                                } else if (BookingDAO.STATUS_CANCELLED.equals(status)) {
                                     request.setAttribute("errorMessage", "Đặt phòng này đã bị hủy trước đó!");
+                                } else {
+                                    request.setAttribute("errorMessage", "Hủy đặt phòng thất bại!");
                                 }
-                            } else {
-                                request.setAttribute("errorMessage", "Không tìm thấy đặt phòng để hủy!");
                             }
                         } catch (NumberFormatException e) {
                             request.setAttribute("errorMessage", "ID đặt phòng không hợp lệ!");
@@ -726,6 +732,30 @@ public class AdminController extends HttpServlet {
             } else {
                 response.sendError(HttpServletResponse.SC_NOT_FOUND, "Action not supported");
             }
+        } else if ("/admin/broadcast".equals(path)) {
+            if ("send".equals(action) && "POST".equals(request.getMethod())) {
+                String message = request.getParameter("message");
+                if (message == null || message.trim().isEmpty()) {
+                    request.setAttribute("errorMessage", "Nội dung thông báo không được để trống!");
+                } else if (!broadcasting.compareAndSet(false, true)) {
+                    request.setAttribute("errorMessage", "Đang gửi một thông báo khác, vui lòng thử lại sau!");
+                } else {
+                    String text = message.trim();
+                    String adminId = user.getUserID();
+                    broadcastExecutor.execute(() -> {
+                        try {
+                            int sent = new NotificationDAO().broadcast(text);
+                            LOGGER.log(Level.INFO, "Broadcast by {0} sent {1} notification(s)", new Object[]{adminId, sent});
+                        } catch (Exception e) {
+                            LOGGER.log(Level.SEVERE, "Broadcast by " + adminId + " failed", e);
+                        } finally {
+                            broadcasting.set(false);
+                        }
+                    });
+                    request.setAttribute("successMessage", "Thông báo đang được gửi tới tất cả người dùng.");
+                }
+            }
+            request.getRequestDispatcher(ADMIN_BROADCAST_PAGE).forward(request, response);
         } else {
             response.sendError(HttpServletResponse.SC_NOT_FOUND, "Page not found");
         }
@@ -3,8 +3,9 @@ package controller;
 import dao.BookingDAO;
 import dao.RoomDAO;
 import dao.PromotionDAO;
-import dao.NotificationDAO;
 import dto.BookingDTO;
+import dto.BookingTransitionDTO;
+import dto.EmailOutboxDTO;
 import dto.RoomDTO;
 import dto.UserDTO;
 import dto.PromotionDTO;
@@ -150,8 +151,7 @@ public class BookingController extends HttpServlet {
                 discountAmount = originalPrice * (discountAmount / 100); // Tính số tiền giảm theo phần trăm
             }
 
-            // Cập nhật usage_count của mã giảm giá
-            promotionDAO.incrementUsageCount(promoCode);
+            // usage_count được tăng trong transaction đặt phòng (BookingDAO.addBooking)
         }
 
         // Tính giá cuối cùng (sau khi giảm)
@@ -162,31 +162,18 @@ public class BookingController extends HttpServlet {
         booking.setPromoCode(promoCode);
         booking.setDiscountAmount(discountAmount);
 
-        if (bookingDAO.addBooking(booking)) {
-            int bookingId = bookingDAO.getLastInsertedBookingId();
-            if (bookingId == -1) {
-                request.setAttribute("errorMessage", "Đặt phòng thành công nhưng không thể lấy ID đặt phòng để gửi thông báo!");
-                viewBookings(request, response, user);
-                return;
-            }
+        // Email xác nhận được ghi vào outbox cùng transaction đặt phòng và gửi ở nền
+        EmailOutboxDTO email = new EmailOutboxDTO(user.getGmail(), EmailUtils.TYPE_BOOKING_SUCCESS)
+                .with("fullName", user.getFullName())
+                .with("roomDetails", room.getName())
+                .with("checkInDate", sdf.format(checkInDate))
+                .with("checkOutDate", sdf.format(checkOutDate));
 
-            NotificationDAO notificationDAO = new NotificationDAO();
-            NotificationDTO notification = new NotificationDTO(0, user.getUserID(),
-                    "Bạn đã đặt phòng '" + room.getName() + "' thành công! Tổng tiền: " + finalPrice + " đ. Vui lòng thanh toán để hoàn tất.", null, false);
-            notificationDAO.addNotification(notification);
-
-            boolean emailSent = EmailUtils.sendBookingSuccessEmail(
-                    user.getGmail(),
-                    user.getFullName(),
-                    String.valueOf(bookingId),
-                    room.getName(),
-                    sdf.format(checkInDate),
-                    sdf.format(checkOutDate)
-            );
-            if (!emailSent) {
-                log("Failed to send booking success email to: " + user.getGmail());
-            }
+        NotificationDTO notification = new NotificationDTO(0, user.getUserID(),
+                "Bạn đã đặt phòng '" + room.getName() + "' thành công! Tổng tiền: " + finalPrice + " đ. Vui lòng thanh toán để hoàn tất.", null, false);
 
+        // Mã giảm giá, giữ phòng, insert, email và thông báo trong cùng một transaction
+        if (bookingDAO.addBooking(booking, email, notification) != null) {
             request.setAttribute("successMessage", "Đặt phòng thành công! Tổng tiền ban đầu: " + originalPrice + " đ, đã giảm: " + discountAmount + " đ, tổng tiền cuối: " + finalPrice + " đ. Vui lòng thanh toán để hoàn tất.");
             viewBookings(request, response, user);
         } else {
@@ -363,15 +350,14 @@ public class BookingController extends HttpServlet {
             throws IOException, ServletException, ClassNotFoundException, Exception {
         int bookingId = Integer.parseInt(request.getParameter("bookingId"));
         BookingDAO bookingDAO = new BookingDAO();
-        BookingDTO booking = bookingDAO.getBookingById(bookingId);
-
-        if (booking != null && BookingDAO.STATUS_PENDING_PAYMENT.equals(booking.getStatus()) && bookingDAO.cancelBooking(bookingId)) {
-            NotificationDAO notificationDAO = new NotificationDAO();
-            String roomName = booking.getRoom() != null ? booking.getRoom().getName() : "Không xác định";
-            String message = "Đơn đặt phòng '" + roomName + "' đã được hủy.";
-            NotificationDTO notification = new NotificationDTO(0, user.getUserID(), message, null, false);
-            notificationDAO.addNotification(notification);
-
+        // Chỉ hủy được đặt phòng của chính mình khi chưa thanh toán; thông báo ghi cùng transaction
+        BookingTransitionDTO cancelled = bookingDAO.transition(bookingId, user.getUserID(), BookingDAO.STATUS_PENDING_PAYMENT,
+                BookingDAO.STATUS_CANCELLED, t -> {
+                    String roomName = t.getRoomName() != null ? t.getRoomName() : "Không xác định";
+                    t.addNotification(t.getUserId(), "Đơn đặt phòng '" + roomName + "' đã được hủy.");
+                });
+
+        if (cancelled != null) {
             response.sendRedirect(request.getContextPath() + "/viewBookings");
         } else {
             request.setAttribute("errorMessage", "Hủy đặt phòng thất bại. Đơn đặt phòng không tồn tại hoặc đã được thanh toán/xác nhận.");
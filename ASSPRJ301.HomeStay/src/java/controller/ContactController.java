@@ -2,10 +2,8 @@ package controller;
 
 import dao.ContactDAO;
 import dao.NotificationDAO;
-import dao.UserDAO;
 import dto.ContactMessageDTO;
 import dto.NotificationDTO;
-import dto.UserDTO;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -13,7 +11,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.sql.Timestamp;
-import java.util.List;
 
 @WebServlet(name = "ContactController", urlPatterns = {"/ContactController"})
 public class ContactController extends HttpServlet {
@@ -48,13 +45,8 @@ public class ContactController extends HttpServlet {
                 }
 
                 // 2. Thông báo cho tất cả Admin
-                UserDAO userDAO = new UserDAO();
-                List<UserDTO> admins = userDAO.getAllAdmins(); 
                 String adminNotificationMessage = "Bạn vừa nhận được một tin nhắn từ người dùng " + (userId != null && !userId.trim().isEmpty() ? userId : fullName) + ".";
-                for (UserDTO admin : admins) {
-                    NotificationDTO adminNotification = new NotificationDTO(0, admin.getUserID(), adminNotificationMessage, new Timestamp(System.currentTimeMillis()), false);
-                    notificationDAO.addNotification(adminNotification);
-                }
+                notificationDAO.notifyRole("AD", adminNotificationMessage);
             } else {
                 request.setAttribute("errorMessage", "Gửi tin nhắn thất bại. Vui lòng thử lại!");
             }
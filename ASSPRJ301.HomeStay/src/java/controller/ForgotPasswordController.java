@@ -1,6 +1,7 @@
 package controller;
 
 import dao.UserDAO;
+import dto.EmailOutboxDTO;
 import dto.UserDTO;
 import java.io.IOException;
 import java.util.UUID;
@@ -42,21 +43,17 @@ public class ForgotPasswordController extends HttpServlet {
 
             // Tạo token đặt lại mật khẩu
             String token = UUID.randomUUID().toString();
-            boolean tokenSaved = userDao.saveResetPasswordToken(user.getUserID(), token);
+            // Email đặt lại mật khẩu được ghi vào outbox cùng transaction lưu token và gửi ở nền
+            EmailOutboxDTO resetEmail = new EmailOutboxDTO(user.getGmail(), EmailUtils.TYPE_RESET_PASSWORD)
+                    .with("fullName", user.getFullName())
+                    .with("token", token);
+            boolean tokenSaved = userDao.saveResetPasswordToken(user.getUserID(), token, resetEmail);
             if (!tokenSaved) {
                 request.setAttribute("errorMessage", "Không thể tạo liên kết đặt lại mật khẩu. Vui lòng thử lại sau!");
                 request.getRequestDispatcher(FORGOT_PASSWORD_PAGE).forward(request, response);
                 return;
             }
 
-            // Gửi email đặt lại mật khẩu
-            boolean emailSent = EmailUtils.sendResetPasswordEmail(user.getGmail(), user.getFullName(), token);
-            if (!emailSent) {
-                request.setAttribute("errorMessage", "Không thể gửi email. Vui lòng thử lại sau!");
-                request.getRequestDispatcher(FORGOT_PASSWORD_PAGE).forward(request, response);
-                return;
-            }
-
             request.setAttribute("successMessage", "Một email đã được gửi đến " + email + " với hướng dẫn đặt lại mật khẩu.");
             request.getRequestDispatcher(FORGOT_PASSWORD_PAGE).forward(request, response);
 
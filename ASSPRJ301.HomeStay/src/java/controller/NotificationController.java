@@ -1,25 +1,59 @@
 package controller;
 
 import dao.NotificationDAO;
+import dto.UserDTO;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 import java.io.IOException;
 
-@WebServlet(name = "NotificationController", urlPatterns = {"/markNotificationAsRead"})
+@WebServlet(name = "NotificationController", urlPatterns = {"/markNotificationAsRead", "/markAllNotificationsAsRead"})
 public class NotificationController extends HttpServlet {
 
     protected void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        int notificationId = Integer.parseInt(request.getParameter("notificationId"));
+        HttpSession session = request.getSession(false);
+        UserDTO user = session != null ? (UserDTO) session.getAttribute("user") : null;
+        if (user == null) {
+            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
         NotificationDAO notificationDAO = new NotificationDAO();
 
-        if (notificationDAO.markAsRead(notificationId)) {
+        if ("/markAllNotificationsAsRead".equals(request.getServletPath())) {
+            // upToId: thông báo mới nhất trang đang hiển thị; bỏ trống là tất cả
+            String upToIdParam = request.getParameter("upToId");
+            int upToId;
+            try {
+                upToId = upToIdParam == null || upToIdParam.isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(upToIdParam);
+            } catch (NumberFormatException e) {
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+            int updated = notificationDAO.markAllAsRead(user.getUserID(), upToId);
+            if (updated < 0) {
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                return;
+            }
+            response.setContentType("text/plain;charset=UTF-8");
+            response.getWriter().print(updated);
+            return;
+        }
+
+        int notificationId;
+        try {
+            notificationId = Integer.parseInt(request.getParameter("notificationId"));
+        } catch (NumberFormatException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        if (notificationDAO.markAsRead(user.getUserID(), notificationId)) {
             response.setStatus(HttpServletResponse.SC_OK);
         } else {
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,312 @@
+package controller;
+
+import com.google.gson.Gson;
+import dao.NotificationDAO;
+import dao.UnreadCounter;
+import dto.NotificationDTO;
+import dto.UserDTO;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import utils.NotificationHub;
+
+/**
+ * Kênh Server-Sent Events đẩy thông báo mới và số chưa đọc tới trình duyệt
+ * (header.jsp mở kết nối trên mọi trang khi đã đăng nhập).
+ *
+ * Mỗi kết nối là một AsyncContext ghi bằng WriteListener (I/O không chặn của
+ * Servlet 3.1), nên kết nối đang chờ không giữ thread xử lý request. Sự kiện
+ * đến từ NotificationHub được xếp hàng và ghi khi socket sẵn sàng; kết nối
+ * quá chậm (hàng đợi vượt MAX_PENDING) bị đóng và trình duyệt tự kết nối lại,
+ * nhận lại các thông báo bị lỡ theo Last-Event-ID. Sự kiện đến trong lúc
+ * đang gửi lại được giữ tới khi gửi lại xong, và thông báo đã gửi lại thì
+ * không được đẩy lần nữa. Người dùng đã mở đủ MAX_PER_USER kết nối (nhiều
+ * tab) thì kết nối cũ nhất bị đóng để nhường chỗ cho kết nối mới.
+ */
+@WebServlet(name = "NotificationStreamController", urlPatterns = {"/notifications/stream"}, asyncSupported = true)
+public class NotificationStreamController extends HttpServlet {
+
+    private static final Logger LOGGER = Logger.getLogger(NotificationStreamController.class.getName());
+    private static final Gson GSON = new Gson();
+
+    private static final long TIMEOUT_MS = Long.getLong("homestay.sse.timeoutMillis", TimeUnit.MINUTES.toMillis(30));
+    private static final long HEARTBEAT_SECONDS = Long.getLong("homestay.sse.heartbeatSeconds", 25L);
+    private static final int MAX_CONNECTIONS = Integer.getInteger("homestay.sse.maxConnections", 10000);
+    private static final int MAX_PER_USER = Integer.getInteger("homestay.sse.maxPerUser", 5);
+    private static final int MAX_PENDING = 100;
+    private static final int REPLAY_LIMIT = 50;
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sequence = new AtomicLong();
+    private final NotificationDAO notificationDAO = new NotificationDAO();
+    private ScheduledExecutorService heartbeat;
+
+    @Override
+    public void init() throws ServletException {
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "homestay-sse-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        // Dòng chú thích định kỳ giữ kết nối qua proxy và phát hiện trình duyệt đã đóng
+        heartbeat.scheduleAtFixedRate(() -> {
+            for (Connection c : connections) {
+                c.send(HEARTBEAT);
+            }
+        }, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        heartbeat.shutdownNow();
+        for (Connection c : connections) {
+            c.close();
+        }
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        HttpSession session = request.getSession(false);
+        UserDTO user = session != null ? (UserDTO) session.getAttribute("user") : null;
+        if (user == null) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+        String userId = user.getUserID();
+        // Đủ số kết nối cho người dùng này: nhường chỗ bằng cách đóng kết nối cũ nhất (thường là tab bị bỏ quên)
+        while (NotificationHub.getInstance().count(userId) >= MAX_PER_USER) {
+            if (!closeOldest(userId)) {
+                break;
+            }
+        }
+        if (connections.size() >= MAX_CONNECTIONS) {
+            response.setHeader("Retry-After", "60");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+
+        response.setContentType("text/event-stream;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("X-Accel-Buffering", "no");
+
+        AsyncContext ctx = request.startAsync();
+        ctx.setTimeout(TIMEOUT_MS);
+        Connection c = new Connection(ctx, userId);
+        ctx.addListener(c);
+        response.getOutputStream().setWriteListener(c);
+        connections.add(c);
+        NotificationHub.getInstance().subscribe(userId, c);
+
+        c.send("retry: 5000\n\n".getBytes(StandardCharsets.UTF_8));
+        // Gửi lại thông báo bị lỡ khi trình duyệt kết nối lại; luồng request này được phép đọc DB
+        int unread = UnreadCounter.getInstance().get(userId);
+        long lastEventId = parseLong(request.getHeader("Last-Event-ID"));
+        long replayedUpTo = Math.max(0, lastEventId);
+        if (lastEventId > 0) {
+            for (NotificationDTO n : notificationDAO.getNotificationsAfter(userId, lastEventId, REPLAY_LIMIT)) {
+                c.sendNotification(n, unread);
+                replayedUpTo = Math.max(replayedUpTo, n.getNotificationId());
+            }
+        }
+        c.replayed(replayedUpTo);
+        c.onUnreadChanged(unread);
+    }
+
+    // Đóng kết nối mở sớm nhất của userId; false nếu không còn kết nối nào
+    private boolean closeOldest(String userId) {
+        Connection oldest = null;
+        for (Connection c : connections) {
+            if (c.userId.equals(userId) && (oldest == null || c.opened < oldest.opened)) {
+                oldest = c;
+            }
+        }
+        if (oldest == null) {
+            return false;
+        }
+        LOGGER.log(Level.FINE, "Closing oldest notification stream for {0}", userId);
+        oldest.close();
+        return true;
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return value != null ? Long.parseLong(value.trim()) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // Một kết nối SSE: hàng đợi sự kiện, ghi khi output sẵn sàng
+    private final class Connection implements NotificationHub.Listener, WriteListener, AsyncListener {
+
+        private final AsyncContext ctx;
+        private final String userId;
+        private final long opened = sequence.incrementAndGet();
+        private final Queue<byte[]> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        private volatile boolean closed;
+        // Thông báo đến trong lúc gửi lại (null khi đã gửi lại xong) và id lớn nhất đã gửi lại
+        private List<NotificationDTO> held = new ArrayList<>();
+        private List<Integer> heldUnread = new ArrayList<>();
+        private long replayedUpTo;
+
+        Connection(AsyncContext ctx, String userId) {
+            this.ctx = ctx;
+            this.userId = userId;
+        }
+
+        @Override
+        public synchronized void onNotification(NotificationDTO n, int unread) {
+            if (held != null) {
+                if (held.size() >= MAX_PENDING) {
+                    close();
+                    return;
+                }
+                held.add(n);
+                heldUnread.add(unread);
+            } else if (n.getNotificationId() > replayedUpTo) {
+                sendNotification(n, unread);
+            }
+        }
+
+        // Gửi lại xong: đẩy các thông báo đang giữ, bỏ những thông báo đã có trong phần gửi lại
+        synchronized void replayed(long upTo) {
+            replayedUpTo = upTo;
+            List<NotificationDTO> live = held;
+            List<Integer> liveUnread = heldUnread;
+            held = null;
+            heldUnread = null;
+            for (int i = 0; i < live.size(); i++) {
+                if (live.get(i).getNotificationId() > upTo) {
+                    sendNotification(live.get(i), liveUnread.get(i));
+                }
+            }
+        }
+
+        // unread < 0 (không biết) thì bỏ trường này, trình duyệt tự tăng số đang hiển thị
+        void sendNotification(NotificationDTO n, int unread) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("id", n.getNotificationId());
+            data.put("message", n.getMessage());
+            data.put("createdAt", n.getCreatedAt() != null ? new SimpleDateFormat("dd/MM/yyyy HH:mm:ss").format(n.getCreatedAt()) : "");
+            if (unread >= 0) {
+                data.put("unread", unread);
+            }
+            send(("id: " + n.getNotificationId() + "\nevent: notification\ndata: " + GSON.toJson(data) + "\n\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void onUnreadChanged(int unread) {
+            if (unread >= 0) {
+                send(("event: unread\ndata: {\"unread\":" + unread + "}\n\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        void send(byte[] event) {
+            if (closed) {
+                return;
+            }
+            if (pendingCount.incrementAndGet() > MAX_PENDING) {
+                LOGGER.log(Level.FINE, "Closing slow notification stream for {0}", userId);
+                close();
+                return;
+            }
+            pending.add(event);
+            drain();
+        }
+
+        // Ghi hết hàng đợi khi còn ghi được; nếu không, container gọi onWritePossible sau
+        private synchronized void drain() {
+            if (closed) {
+                return;
+            }
+            try {
+                ServletOutputStream out = ctx.getResponse().getOutputStream();
+                while (out.isReady()) {
+                    byte[] event = pending.poll();
+                    if (event == null) {
+                        return;
+                    }
+                    pendingCount.decrementAndGet();
+                    out.write(event);
+                    if (out.isReady()) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                close();
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            connections.remove(this);
+            NotificationHub.getInstance().unsubscribe(userId, this);
+            try {
+                ctx.complete();
+            } catch (IllegalStateException e) {
+                // Đã kết thúc
+            }
+        }
+
+        @Override
+        public void onWritePossible() {
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            close();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -1,91 +1,72 @@
 package controller;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import dao.BookingDAO;
-import dao.NotificationDAO;
-import dao.UserDAO; // Thêm import để lấy danh sách admin
-import dto.BookingDTO;
-import dto.NotificationDTO;
-import dto.UserDTO; // Thêm import để xử lý UserDTO
 import java.io.IOException;
-import java.util.List; // Thêm import để xử lý danh sách admin
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import utils.EmailUtils;
+import payment.MoMoCallback;
+import payment.MoMoSignature;
+import payment.PaymentEventProcessor;
 
+// Trang kết quả sau khi MoMo chuyển hướng người dùng về. Trang chỉ đọc trạng thái đặt phòng;
+// việc cập nhật sang Paid, gửi email và thông báo do PaymentEventProcessor làm từ payment_events
 @WebServlet("/paymentResult")
 public class PaymentResultController extends HttpServlet {
 
+    private static final Logger LOGGER = Logger.getLogger(PaymentResultController.class.getName());
+    private static final Gson GSON = new Gson();
+
+    // Các tham số MoMo gửi kèm URL chuyển hướng, cùng bộ với IPN
+    private static final String[] CALLBACK_PARAMS = {"partnerCode", "orderId", "requestId", "amount", "orderInfo",
+        "orderType", "transId", "resultCode", "message", "payType", "responseTime", "extraData", "signature"};
+
     private BookingDAO bookingDAO = new BookingDAO();
-    private NotificationDAO notificationDAO = new NotificationDAO();
-    private UserDAO userDAO = new UserDAO(); 
 
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
         String resultCode = request.getParameter("resultCode");
         String orderId = request.getParameter("orderId");
-        String amount = request.getParameter("amount");
 
-        if ("0".equals(resultCode)) { // Thanh toán thành công
-            String bookingId = orderId.split("_")[0]; // Tách bookingId từ orderId
-            try {
-                int bookingIdInt = Integer.parseInt(bookingId);
-                BookingDTO booking = bookingDAO.getBookingById(bookingIdInt);
-                if (booking != null && BookingDAO.STATUS_PENDING_PAYMENT.equals(booking.getStatus())) {
-                    // Cập nhật trạng thái booking thành "Paid"
-                    bookingDAO.updateBookingStatus(bookingIdInt, BookingDAO.STATUS_PAID);
+        // URL chuyển hướng có chữ ký giống IPN: ghi lại như một IPN (trùng thì bỏ qua),
+        // để thanh toán vẫn được ghi nhận khi IPN không tới được (ví dụ IPN URL là localhost)
+        recordRedirect(request);
 
-                    // Tạo thông báo cho người dùng
-                    String userId = booking.getUser().getUserID();
-                    String roomName = booking.getRoom() != null ? booking.getRoom().getName() : "Không xác định";
-                    String message = "Thanh toán thành công cho đặt phòng '" + roomName + "' với số tiền "
-                            + String.format("%,.0f", Double.parseDouble(amount)) + " VND.";
-                    NotificationDTO userNotification = new NotificationDTO(0, userId, message, null, false);
-                    notificationDAO.addNotification(userNotification);
-
-                    // Gửi email thông báo thanh toán thành công cho người dùng
-                    boolean emailSent = EmailUtils.sendPaymentSuccessEmail(
-                            booking.getUser().getGmail(),
-                            booking.getUser().getFullName(),
-                            String.valueOf(bookingIdInt),
-                            amount,
-                            new java.util.Date().toString()
-                    );
-                    if (!emailSent) {
-                        log("Failed to send payment success email to: " + booking.getUser().getGmail());
-                    }
-
-                    // Gửi thông báo cho tất cả admin
-                    try {
-                        List<UserDTO> admins = userDAO.getAllAdmins(); // Lấy danh sách admin
-                        for (UserDTO admin : admins) {
-                            String adminMessage = "Người dùng " + booking.getUser().getFullName() + " đã thanh toán thành công cho đặt phòng (ID: " + bookingIdInt + ") phòng '" + roomName + "' với số tiền " + String.format("%,.0f", Double.parseDouble(amount)) + " VND. Vui lòng xác nhận.";
-                            NotificationDTO adminNotification = new NotificationDTO(0, admin.getUserID(), adminMessage, null, false);
-                            notificationDAO.addNotification(adminNotification);
-                        }
-                    } catch (Exception e) {
-                        log("Failed to send notification to admins: " + e.getMessage());
+        String state = "error";
+        if ("0".equals(resultCode)) { // Thanh toán thành công
+            Integer bookingId = PaymentEventProcessor.parseBookingId(orderId);
+            if (bookingId == null) {
+                request.setAttribute("message", "Lỗi: ID đặt phòng không hợp lệ.");
+            } else {
+                try {
+                    String status = bookingDAO.getStatus(bookingId);
+                    if (BookingDAO.STATUS_PAID.equals(status) || BookingDAO.STATUS_CONFIRMED.equals(status)) {
+                        state = "success";
+                        request.setAttribute("message", "Thanh toán thành công cho đơn đặt phòng #" + bookingId);
+                    } else if (BookingDAO.STATUS_PENDING_PAYMENT.equals(status)) {
+                        state = "pending";
+                        request.setAttribute("message", "Đang xác nhận thanh toán cho đơn đặt phòng #" + bookingId + ", vui lòng chờ trong giây lát...");
+                    } else {
+                        request.setAttribute("message", "Không tìm thấy đơn đặt phòng hoặc trạng thái không hợp lệ.");
                     }
-
-                    // Gửi thông báo thành công tới giao diện
-                    request.setAttribute("message", "Thanh toán thành công cho đơn đặt phòng #" + bookingId);
-                } else {
-                    request.setAttribute("message", "Không tìm thấy đơn đặt phòng hoặc trạng thái không hợp lệ.");
+                } catch (Exception e) {
+                    LOGGER.log(Level.SEVERE, "Error reading booking status", e);
+                    request.setAttribute("message", "Lỗi khi kiểm tra trạng thái thanh toán: " + e.getMessage());
                 }
-            } catch (NumberFormatException e) {
-                e.printStackTrace();
-                request.setAttribute("message", "Lỗi: ID đặt phòng không hợp lệ.");
-            } catch (Exception e) {
-                e.printStackTrace();
-                request.setAttribute("message", "Lỗi khi cập nhật trạng thái thanh toán: " + e.getMessage());
             }
         } else {
             request.setAttribute("message", "Thanh toán thất bại. Mã lỗi: " + resultCode + ". Vui lòng thử lại.");
         }
 
+        request.setAttribute("paymentState", state);
         request.getRequestDispatcher("/payment-result.jsp").forward(request, response);
     }
 
@@ -94,4 +75,30 @@ public class PaymentResultController extends HttpServlet {
             throws ServletException, IOException {
         doGet(request, response); // Xử lý POST giống GET để hỗ trợ IPN từ MoMo
     }
-}
\ No newline at end of file
+
+    private void recordRedirect(HttpServletRequest request) {
+        if (request.getParameter("signature") == null) {
+            return;
+        }
+        JsonObject json = new JsonObject();
+        for (String name : CALLBACK_PARAMS) {
+            String value = request.getParameter(name);
+            if (value != null) {
+                json.addProperty(name, value);
+            }
+        }
+        try {
+            MoMoCallback callback = GSON.fromJson(json, MoMoCallback.class);
+            if (MoMoSignature.verifyCallback(callback)) {
+                PaymentEventProcessor.getInstance().submit(callback, json.toString());
+            } else {
+                LOGGER.log(Level.WARNING, "Invalid MoMo signature on payment redirect for order {0}", request.getParameter("orderId"));
+            }
+        } catch (JsonParseException e) {
+            LOGGER.log(Level.WARNING, "Malformed MoMo payment redirect: {0}", e.getMessage());
+        } catch (Exception e) {
+            // IPN vẫn có thể ghi nhận thanh toán, trang chỉ hiển thị trạng thái hiện tại
+            LOGGER.log(Level.SEVERE, "Error recording MoMo payment redirect", e);
+        }
+    }
+}
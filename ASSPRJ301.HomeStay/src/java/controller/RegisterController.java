@@ -1,6 +1,7 @@
 package controller;
 
 import dao.UserDAO;
+import dto.EmailOutboxDTO;
 import dto.UserDTO;
 import java.io.IOException;
 import java.util.UUID;
@@ -87,15 +88,12 @@ public class RegisterController extends HttpServlet {
 
             // Tạo người dùng mới với token và isVerified = false
             UserDTO newUser = new UserDTO(newUsername, fullName, "US", newPassword, gmail, sdt, null, token, false);
-            if (userDao.create(newUser)) {
-                // Gửi email xác thực
-                boolean emailSent = EmailUtils.sendVerificationEmail(gmail, fullName, token);
-                if (emailSent) {
-                    request.setAttribute("successMessage", "Đăng ký thành công! Vui lòng kiểm tra email để xác thực tài khoản.");
-                } else {
-                    request.setAttribute("successMessage", "Đăng ký thành công! Tuy nhiên, không thể gửi email xác thực.");
-                    log("Failed to send verification email to: " + gmail);
-                }
+            // Email xác thực được ghi vào outbox cùng transaction tạo tài khoản và gửi ở nền
+            EmailOutboxDTO email = new EmailOutboxDTO(gmail, EmailUtils.TYPE_VERIFICATION)
+                    .with("fullName", fullName)
+                    .with("token", token);
+            if (userDao.create(newUser, email)) {
+                request.setAttribute("successMessage", "Đăng ký thành công! Vui lòng kiểm tra email để xác thực tài khoản.");
                 request.setAttribute("showRegisterForm", false);
             } else {
                 request.setAttribute("errorMessage", "Lỗi hệ thống, vui lòng thử lại!");
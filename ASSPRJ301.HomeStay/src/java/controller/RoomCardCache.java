@@ -0,0 +1,114 @@
+package controller;
+
+import dao.RoomCatalogCache;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache HTML đã render (dạng byte UTF-8) cho trang tìm kiếm phòng.
+ *
+ * - Thẻ phòng: khóa theo id phòng, hợp lệ khi phòng chưa đổi phiên bản trong
+ *   RoomCatalogCache (sửa phòng hoặc có đánh giá mới sẽ đổi phiên bản).
+ * - Trang kết quả: khóa theo bộ lọc đã chuẩn hóa, hợp lệ khi generation của
+ *   danh mục phòng không đổi. Kết quả lọc theo ngày phụ thuộc vào đặt phòng
+ *   nên không được cache ở đây.
+ */
+final class RoomCardCache {
+
+    private static final int MAX_PAGES = Integer.getInteger("homestay.roomPageCache.maxPages", 500);
+    private static final RoomCardCache INSTANCE = new RoomCardCache();
+
+    private final Map<Integer, Rendered> cards = new ConcurrentHashMap<>();
+    private final Map<String, Rendered> pages = new LinkedHashMap<String, Rendered>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Rendered> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+
+    private final AtomicLong cardHits = new AtomicLong();
+    private final AtomicLong cardMisses = new AtomicLong();
+    private final AtomicLong pageHits = new AtomicLong();
+    private final AtomicLong pageMisses = new AtomicLong();
+
+    private RoomCardCache() {
+    }
+
+    static RoomCardCache getInstance() {
+        return INSTANCE;
+    }
+
+    // Phiên bản hiện tại của danh mục; đọc trước khi truy vấn DB rồi truyền vào putPage
+    long catalogVersion() {
+        return RoomCatalogCache.getInstance().currentGeneration();
+    }
+
+    // Thẻ được đánh dấu bằng catalogVersion đọc trước khi truy vấn DB,
+    // nên còn hợp lệ khi phòng chưa bị invalidate kể từ thời điểm đó
+    byte[] getCard(int roomId) {
+        Rendered e = cards.get(roomId);
+        if (e != null && e.version >= RoomCatalogCache.getInstance().roomVersion(roomId)) {
+            cardHits.incrementAndGet();
+            return e.bytes;
+        }
+        cardMisses.incrementAndGet();
+        return null;
+    }
+
+    void putCard(int roomId, long version, byte[] bytes) {
+        cards.put(roomId, new Rendered(version, bytes));
+    }
+
+    byte[] getPage(String key) {
+        Rendered e;
+        synchronized (pages) {
+            e = pages.get(key);
+        }
+        if (e != null && e.version == catalogVersion()) {
+            pageHits.incrementAndGet();
+            return e.bytes;
+        }
+        pageMisses.incrementAndGet();
+        return null;
+    }
+
+    void putPage(String key, long version, byte[] bytes) {
+        synchronized (pages) {
+            pages.put(key, new Rendered(version, bytes));
+        }
+    }
+
+    void clear() {
+        cards.clear();
+        synchronized (pages) {
+            pages.clear();
+        }
+    }
+
+    Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cards", cards.size());
+        synchronized (pages) {
+            stats.put("pages", pages.size());
+        }
+        stats.put("maxPages", MAX_PAGES);
+        stats.put("cardHits", cardHits.get());
+        stats.put("cardMisses", cardMisses.get());
+        stats.put("pageHits", pageHits.get());
+        stats.put("pageMisses", pageMisses.get());
+        return stats;
+    }
+
+    private static final class Rendered {
+
+        final long version;
+        final byte[] bytes;
+
+        Rendered(long version, byte[] bytes) {
+            this.version = version;
+            this.bytes = bytes;
+        }
+    }
+}
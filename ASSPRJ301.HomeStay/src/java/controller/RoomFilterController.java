@@ -1,13 +1,21 @@
 package controller;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import dto.RoomDTO;
+import dto.RoomPageDTO;
 import dao.RoomDAO;
 import javax.servlet.annotation.WebServlet;
 
@@ -15,26 +23,47 @@ import javax.servlet.annotation.WebServlet;
 public class RoomFilterController extends HttpServlet {
 
     private static final int ITEMS_PER_PAGE = 6; // Đặt 6 homestay mỗi trang
+    private static final Set<String> SORTS = new HashSet<>(Arrays.asList("price_asc", "price_desc", "rating", "name"));
 
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
         // Thiết lập encoding
         response.setContentType("text/html;charset=UTF-8");
         request.setCharacterEncoding("UTF-8");
-        PrintWriter out = response.getWriter();
 
         // Nhận tham số từ request
-        String searchName = request.getParameter("searchName");
+        // Chuẩn hóa một lần: cùng giá trị dùng cho khóa cache và cho truy vấn
+        String searchName = normalize(request.getParameter("searchName"));
         String minPriceStr = request.getParameter("minPrice");
         String maxPriceStr = request.getParameter("maxPrice");
-        String amenities = request.getParameter("amenities");
+        String amenities = normalize(request.getParameter("amenities"));
         String pageStr = request.getParameter("page");
         String getTotal = request.getParameter("getTotal");
+        String checkInStr = request.getParameter("checkIn");
+        String checkOutStr = request.getParameter("checkOut");
+        String sort = request.getParameter("sort");
 
         // Xử lý giá (nếu không nhập thì đặt giá trị mặc định)
         double minPrice = (minPriceStr != null && !minPriceStr.isEmpty()) ? Double.parseDouble(minPriceStr) : 0;
         double maxPrice = (maxPriceStr != null && !maxPriceStr.isEmpty()) ? Double.parseDouble(maxPriceStr) : Double.MAX_VALUE;
 
+        // Khoảng ngày (không bắt buộc): chỉ lấy phòng còn trống cho toàn bộ khoảng này
+        LocalDate checkIn = null;
+        LocalDate checkOut = null;
+        if (checkInStr != null && !checkInStr.isEmpty() && checkOutStr != null && !checkOutStr.isEmpty()) {
+            try {
+                checkIn = LocalDate.parse(checkInStr);
+                checkOut = LocalDate.parse(checkOutStr);
+            } catch (DateTimeParseException e) {
+                checkIn = null;
+                checkOut = null;
+            }
+            if (checkIn == null || !checkOut.isAfter(checkIn)) {
+                writeText(response, "true".equals(getTotal) ? "0" : "<p>Ngày trả phòng phải sau ngày nhận phòng!</p>");
+                return;
+            }
+        }
+
         // Xử lý trang hiện tại
         int page = 1;
         if (pageStr != null && !pageStr.isEmpty()) {
@@ -45,54 +74,88 @@ public class RoomFilterController extends HttpServlet {
             }
         }
 
-        // Lấy danh sách phòng từ DAO
         RoomDAO roomDAO = new RoomDAO();
-        List<RoomDTO> rooms;
-        try {
-            rooms = roomDAO.getFilteredRooms(searchName, minPrice, maxPrice, amenities);
-        } catch (Exception e) {
-            out.println("<p>Đã xảy ra lỗi khi lấy danh sách phòng: " + e.getMessage() + "</p>");
-            out.close();
-            return;
-        }
 
-        // Nếu chỉ cần lấy tổng số phòng (cho phân trang Ajax)
+        // Nếu chỉ cần lấy tổng số phòng (cho phân trang Ajax): chỉ chạy COUNT(*)
         if ("true".equals(getTotal)) {
-            out.write(String.valueOf(rooms.size()));
-            out.close();
+            writeText(response, String.valueOf(roomDAO.countFilteredRooms(searchName, minPrice, maxPrice, amenities, checkIn, checkOut)));
             return;
         }
 
-        // Tính toán phân trang
-        int totalRooms = rooms.size();
-        int totalPages = (int) Math.ceil((double) totalRooms / ITEMS_PER_PAGE);
-        if (page < 1) {
-            page = 1;
-        }
-        if (page > totalPages) {
-            page = totalPages;
+        // Trang kết quả đã render sẵn cho bộ lọc phổ biến; lọc theo ngày thì không cache vì phụ thuộc đặt phòng
+        RoomCardCache cache = RoomCardCache.getInstance();
+        String pageKey = checkIn == null ? pageKey(searchName, minPrice, maxPrice, amenities, sort, page) : null;
+        byte[] body = pageKey != null ? cache.getPage(pageKey) : null;
+        if (body == null) {
+            long version = cache.catalogVersion();
+
+            // Lấy đúng một trang phòng từ DAO (lọc, sắp xếp, phân trang trong SQL)
+            List<RoomDTO> roomsToShow;
+            try {
+                RoomPageDTO result = roomDAO.getFilteredRooms(searchName, minPrice, maxPrice, amenities, checkIn, checkOut,
+                        sort, page, ITEMS_PER_PAGE);
+                roomsToShow = result.getRooms();
+            } catch (Exception e) {
+                writeText(response, "<p>Đã xảy ra lỗi khi lấy danh sách phòng: " + e.getMessage() + "</p>");
+                return;
+            }
+
+            // Ghép HTML các thẻ phòng, dùng lại thẻ đã render nếu phòng chưa thay đổi
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(roomsToShow.size() * 1024);
+            for (RoomDTO room : roomsToShow) {
+                byte[] card = cache.getCard(room.getId());
+                if (card == null) {
+                    card = renderCard(room);
+                    cache.putCard(room.getId(), version, card);
+                }
+                buffer.write(card);
+            }
+            body = buffer.toByteArray();
+            if (pageKey != null) {
+                cache.putPage(pageKey, version, body);
+            }
         }
 
-        int start = (page - 1) * ITEMS_PER_PAGE;
-        int end = Math.min(start + ITEMS_PER_PAGE, totalRooms);
-        List<RoomDTO> roomsToShow = totalRooms > 0 ? rooms.subList(start, end) : rooms;
-
-        // Trả về HTML cập nhật danh sách phòng
-        for (RoomDTO room : roomsToShow) {
-            out.println("<div class='room-item'>");
-            out.println("<div class='room-content'>");
-            out.println("<div class='room-image'>");
-            out.println("<img src='" + room.getImageUrl() + "' alt='Hình ảnh phòng'>");
-            out.println("</div>");
-            out.println("<h3>" + room.getName() + "</h3>");
-            out.println("<p><i class='fas fa-tag'></i> Khởi giá từ " + String.format("%,.0f", room.getPrice()) + " VND</p>");
-            out.println("<p><i class='fas fa-wifi'></i> Tiện ích: " + (room.getAmenities() != null ? room.getAmenities() : "Chưa có tiện ích") + "</p>");
-            out.println("<p><i class='fas fa-star'></i> Đánh giá: " + String.format("%.1f", room.getAverageRating()) + "/5 (" + room.getReviewCount() + " đánh giá)</p>");
-            out.println("<button onclick='roomDetails(" + room.getId() + ")'>Xem chi tiết</button>");
-            out.println("</div>");
-            out.println("</div>");
+        response.setContentLength(body.length);
+        try (OutputStream out = response.getOutputStream()) {
+            out.write(body);
         }
+    }
+
+    // Khóa trang từ tham số đã chuẩn hóa; bỏ kiểu sắp xếp không hợp lệ
+    private String pageKey(String searchName, double minPrice, double maxPrice, String amenities, String sort, int page) {
+        return searchName + '|' + minPrice + '|' + maxPrice + '|' + amenities + '|'
+                + (sort != null && SORTS.contains(sort) ? sort : "") + '|' + Math.max(1, page);
+    }
 
-        out.close();
+    // Bỏ khoảng trắng hai đầu và về chữ thường (truy vấn so sánh bằng LOWER(...) LIKE nên kết quả không đổi)
+    private String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase();
+    }
+
+    // Trả về HTML của một thẻ phòng
+    private byte[] renderCard(RoomDTO room) {
+        StringBuilder html = new StringBuilder(512);
+        html.append("<div class='room-item'>\n");
+        html.append("<div class='room-content'>\n");
+        html.append("<div class='room-image'>\n");
+        html.append("<img src='").append(room.getImageUrl()).append("' alt='Hình ảnh phòng'>\n");
+        html.append("</div>\n");
+        html.append("<h3>").append(room.getName()).append("</h3>\n");
+        html.append("<p><i class='fas fa-tag'></i> Khởi giá từ ").append(String.format("%,.0f", room.getPrice())).append(" VND</p>\n");
+        html.append("<p><i class='fas fa-wifi'></i> Tiện ích: ").append(room.getAmenities() != null ? room.getAmenities() : "Chưa có tiện ích").append("</p>\n");
+        html.append("<p><i class='fas fa-star'></i> Đánh giá: ").append(String.format("%.1f", room.getAverageRating())).append("/5 (").append(room.getReviewCount()).append(" đánh giá)</p>\n");
+        html.append("<button onclick='roomDetails(").append(room.getId()).append(")'>Xem chi tiết</button>\n");
+        html.append("</div>\n");
+        html.append("</div>\n");
+        return html.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void writeText(HttpServletResponse response, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        response.setContentLength(bytes.length);
+        try (OutputStream out = response.getOutputStream()) {
+            out.write(bytes);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,143 @@
+package controller;
+
+import com.google.gson.Gson;
+import dao.AvailabilityIndex;
+import dao.EmailOutboxDAO;
+import dao.RoomCatalogCache;
+import dao.RoomDAO;
+import dao.UnreadCounter;
+import dto.UserDTO;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import payment.MoMoGatewayClient;
+import payment.PaymentEventProcessor;
+import payment.UnpaidBookingSweeper;
+import utils.DBUtils;
+import utils.EmailDispatcher;
+import utils.NotificationHub;
+import utils.NotificationRetention;
+
+@WebServlet(name = "SystemStatusController", urlPatterns = {"/admin/system"})
+public class SystemStatusController extends HttpServlet {
+
+    private static final Logger LOGGER = Logger.getLogger(SystemStatusController.class.getName());
+    private static final Gson GSON = new Gson();
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!isAdmin(request)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN, "Admin only");
+            return;
+        }
+        writeStatus(response);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!isAdmin(request)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN, "Admin only");
+            return;
+        }
+
+        String action = request.getParameter("action");
+        if ("rebuildRatings".equals(action)) {
+            try {
+                int updated = new RoomDAO().rebuildRatingStats();
+                LOGGER.log(Level.INFO, "Rating stats rebuilt for {0} room(s)", updated);
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Error rebuilding rating stats", e);
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+                return;
+            }
+        } else if ("flushRoomCache".equals(action)) {
+            RoomCatalogCache.getInstance().invalidateAll();
+            RoomCardCache.getInstance().clear();
+            LOGGER.log(Level.INFO, "Room catalog cache flushed by {0}", getAdminId(request));
+        } else if ("reconcileAvailability".equals(action)) {
+            try {
+                int drift = AvailabilityIndex.getInstance().reconcile();
+                LOGGER.log(Level.INFO, "Availability index reconciled, {0} booking(s) corrected", drift);
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Error reconciling availability index", e);
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+                return;
+            }
+        } else if ("expireUnpaidBookings".equals(action)) {
+            try {
+                int expired = UnpaidBookingSweeper.getInstance().sweep();
+                LOGGER.log(Level.INFO, "{0} unpaid booking(s) expired by {1}", new Object[]{expired, getAdminId(request)});
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Error expiring unpaid bookings", e);
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+                return;
+            }
+        } else if ("purgeNotifications".equals(action)) {
+            try {
+                int removed = NotificationRetention.getInstance().purge();
+                LOGGER.log(Level.INFO, "{0} notification(s) purged by {1}", new Object[]{removed, getAdminId(request)});
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Error purging notifications", e);
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+                return;
+            }
+        } else if ("requeueDeadEmails".equals(action)) {
+            try {
+                int requeued = new EmailOutboxDAO().requeueDead();
+                LOGGER.log(Level.INFO, "{0} dead-lettered email(s) requeued by {1}", new Object[]{requeued, getAdminId(request)});
+                EmailDispatcher.getInstance().nudge();
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Error requeuing dead-lettered emails", e);
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+                return;
+            }
+        } else {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Action not supported");
+            return;
+        }
+        writeStatus(response);
+    }
+
+    private String getAdminId(HttpServletRequest request) {
+        return ((UserDTO) request.getSession().getAttribute("user")).getUserID();
+    }
+
+    private boolean isAdmin(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        UserDTO user = session != null ? (UserDTO) session.getAttribute("user") : null;
+        return user != null && "AD".equals(user.getRoleID());
+    }
+
+    private void writeStatus(HttpServletResponse response) throws IOException {
+        Map<String, Object> status = new LinkedHashMap<>();
+        try {
+            status.put("dbPool", DBUtils.getPoolStatistics());
+        } catch (ClassNotFoundException e) {
+            LOGGER.log(Level.SEVERE, "Error reading pool statistics", e);
+            status.put("dbPool", "unavailable");
+        }
+        status.put("roomCache", RoomCatalogCache.getInstance().getStatistics());
+        status.put("roomCardCache", RoomCardCache.getInstance().getStatistics());
+        status.put("availabilityIndex", AvailabilityIndex.getInstance().getStatistics());
+        status.put("unreadCounter", UnreadCounter.getInstance().getStatistics());
+        status.put("notificationStream", NotificationHub.getInstance().getStatistics());
+        status.put("notificationRetention", NotificationRetention.getInstance().getStatistics());
+        status.put("email", EmailDispatcher.getInstance().getStatistics());
+        status.put("momo", MoMoGatewayClient.getInstance().getStatistics());
+        status.put("payments", PaymentEventProcessor.getInstance().getStatistics());
+        status.put("bookingExpiry", UnpaidBookingSweeper.getInstance().getStatistics());
+
+        response.setContentType("application/json;charset=UTF-8");
+        response.getWriter().write(GSON.toJson(status));
+    }
+}
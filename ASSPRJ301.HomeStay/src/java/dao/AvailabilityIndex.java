@@ -0,0 +1,278 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import utils.DBUtils;
+
+/**
+ * Chỉ mục phòng trống trong bộ nhớ: với mỗi phòng giữ tập các khoảng lưu trú
+ * [check-in, check-out) của các đặt phòng chưa hủy, sắp theo ngày nhận phòng.
+ *
+ * BookingDAO cập nhật chỉ mục sau mỗi lần thêm/hủy/xóa đặt phòng, nên
+ * isRoomAvailable trả lời từ bộ nhớ thay vì truy vấn SQL Server. Cơ sở dữ liệu
+ * (khóa chính của room_nights) vẫn là nơi quyết định cuối cùng khi insert.
+ * reconcile() nạp lại toàn bộ từ bảng bookings để sửa sai lệch (ví dụ dữ liệu
+ * sửa tay hoặc ghi từ một node khác).
+ */
+public final class AvailabilityIndex {
+
+    private static final AvailabilityIndex INSTANCE = new AvailabilityIndex();
+
+    private static final String LOAD_SQL = "SELECT id, room_id, check_in_date, check_out_date FROM bookings "
+            + "WHERE status <> '" + BookingDAO.STATUS_CANCELLED + "' AND check_out_date > check_in_date";
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Integer, RoomStays> rooms = new HashMap<>();
+    private Map<Integer, Stay> byBooking = new HashMap<>();
+    private volatile boolean loaded;
+
+    // Các thay đổi xảy ra trong lúc reconcile đang đọc DB, được áp lại lên bản mới trước khi thay thế
+    private List<Runnable> pendingDuringReload;
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong reconciles = new AtomicLong();
+    private final AtomicLong driftCorrections = new AtomicLong();
+
+    private AvailabilityIndex() {
+    }
+
+    public static AvailabilityIndex getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // Trả về null nếu chỉ mục chưa được nạp, khi đó người gọi phải hỏi DB
+    Boolean isAvailable(int roomId, LocalDate checkIn, LocalDate checkOut) {
+        if (!loaded) {
+            fallbacks.incrementAndGet();
+            return null;
+        }
+        lookups.incrementAndGet();
+        lock.readLock().lock();
+        try {
+            RoomStays stays = rooms.get(roomId);
+            return stays == null || !stays.overlaps(checkIn.toEpochDay(), checkOut.toEpochDay());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void add(int bookingId, int roomId, LocalDate checkIn, LocalDate checkOut) {
+        if (!checkOut.isAfter(checkIn)) {
+            return;
+        }
+        Stay stay = new Stay(bookingId, roomId, checkIn.toEpochDay(), checkOut.toEpochDay());
+        lock.writeLock().lock();
+        try {
+            put(rooms, byBooking, stay);
+            if (pendingDuringReload != null) {
+                pendingDuringReload.add(() -> put(rooms, byBooking, stay));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(int bookingId) {
+        lock.writeLock().lock();
+        try {
+            drop(rooms, byBooking, bookingId);
+            if (pendingDuringReload != null) {
+                pendingDuringReload.add(() -> drop(rooms, byBooking, bookingId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Nạp lại chỉ mục từ bảng bookings và thay thế bản trong bộ nhớ.
+     *
+     * @return số đặt phòng bị lệch giữa bộ nhớ và DB (thiếu, thừa hoặc sai ngày)
+     */
+    public int reconcile() throws ClassNotFoundException, SQLException {
+        lock.writeLock().lock();
+        try {
+            pendingDuringReload = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Map<Integer, RoomStays> freshRooms = new HashMap<>();
+        Map<Integer, Stay> freshBookings = new HashMap<>();
+        try {
+            try (Connection conn = DBUtils.getConnection();
+                    PreparedStatement ps = conn.prepareStatement(LOAD_SQL);
+                    ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    put(freshRooms, freshBookings, new Stay(rs.getInt("id"), rs.getInt("room_id"),
+                            rs.getDate("check_in_date").toLocalDate().toEpochDay(),
+                            rs.getDate("check_out_date").toLocalDate().toEpochDay()));
+                }
+            }
+        } catch (ClassNotFoundException | SQLException | RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pendingDuringReload = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            // Áp lại các thay đổi đến sau khi bắt đầu đọc; add/remove theo bookingId nên áp lại nhiều lần vẫn đúng
+            Map<Integer, RoomStays> liveRooms = rooms;
+            Map<Integer, Stay> liveBookings = byBooking;
+            rooms = freshRooms;
+            byBooking = freshBookings;
+            for (Runnable change : pendingDuringReload) {
+                change.run();
+            }
+            pendingDuringReload = null;
+
+            int drift = loaded ? countDrift(liveBookings, byBooking) : 0;
+            driftCorrections.addAndGet(drift);
+            reconciles.incrementAndGet();
+            loaded = true;
+            return drift;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            stats.put("loaded", loaded);
+            stats.put("rooms", rooms.size());
+            stats.put("bookings", byBooking.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+        stats.put("lookups", lookups.get());
+        stats.put("dbFallbacks", fallbacks.get());
+        stats.put("reconciles", reconciles.get());
+        stats.put("driftCorrections", driftCorrections.get());
+        return stats;
+    }
+
+    private static void put(Map<Integer, RoomStays> rooms, Map<Integer, Stay> byBooking, Stay stay) {
+        drop(rooms, byBooking, stay.bookingId);
+        byBooking.put(stay.bookingId, stay);
+        rooms.computeIfAbsent(stay.roomId, k -> new RoomStays()).add(stay);
+    }
+
+    private static void drop(Map<Integer, RoomStays> rooms, Map<Integer, Stay> byBooking, int bookingId) {
+        Stay old = byBooking.remove(bookingId);
+        if (old != null) {
+            RoomStays stays = rooms.get(old.roomId);
+            if (stays != null && stays.remove(old) && stays.isEmpty()) {
+                rooms.remove(old.roomId);
+            }
+        }
+    }
+
+    private static int countDrift(Map<Integer, Stay> before, Map<Integer, Stay> after) {
+        int drift = 0;
+        for (Map.Entry<Integer, Stay> e : before.entrySet()) {
+            if (!e.getValue().sameAs(after.get(e.getKey()))) {
+                drift++;
+            }
+        }
+        for (Integer id : after.keySet()) {
+            if (!before.containsKey(id)) {
+                drift++;
+            }
+        }
+        return drift;
+    }
+
+    // Khoảng lưu trú của một đặt phòng, ngày tính theo epoch day
+    private static final class Stay implements Comparable<Stay> {
+
+        final int bookingId;
+        final int roomId;
+        final long start;
+        final long end;
+
+        Stay(int bookingId, int roomId, long start, long end) {
+            this.bookingId = bookingId;
+            this.roomId = roomId;
+            this.start = start;
+            this.end = end;
+        }
+
+        boolean sameAs(Stay other) {
+            return other != null && other.roomId == roomId && other.start == start && other.end == end;
+        }
+
+        @Override
+        public int compareTo(Stay o) {
+            int c = Long.compare(start, o.start);
+            return c != 0 ? c : Integer.compare(bookingId, o.bookingId);
+        }
+    }
+
+    // Các khoảng của một phòng sắp theo ngày nhận phòng.
+    // maxLength (số đêm dài nhất) cho phép dừng quét sớm khi tìm khoảng giao nhau
+    private static final class RoomStays {
+
+        private final TreeSet<Stay> stays = new TreeSet<>();
+        private long maxLength;
+
+        void add(Stay stay) {
+            stays.add(stay);
+            maxLength = Math.max(maxLength, stay.end - stay.start);
+        }
+
+        boolean remove(Stay stay) {
+            boolean removed = stays.remove(stay);
+            if (removed && stay.end - stay.start == maxLength) {
+                maxLength = 0;
+                for (Stay s : stays) {
+                    maxLength = Math.max(maxLength, s.end - s.start);
+                }
+            }
+            return removed;
+        }
+
+        boolean isEmpty() {
+            return stays.isEmpty();
+        }
+
+        // Có khoảng nào giao [from, to) không: chỉ xét các khoảng bắt đầu trước "to",
+        // và dừng khi khoảng bắt đầu sớm tới mức không thể kéo dài tới "from"
+        boolean overlaps(long from, long to) {
+            NavigableSet<Stay> candidates = stays.headSet(new Stay(Integer.MIN_VALUE, 0, to, to), false).descendingSet();
+            for (Stay s : candidates) {
+                if (s.end > from) {
+                    return true;
+                }
+                if (s.start + maxLength <= from) {
+                    return false;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -1,17 +1,29 @@
 package dao;
 
 import dto.BookingDTO;
+import dto.BookingTransitionDTO;
+import dto.EmailOutboxDTO;
+import dto.NotificationDTO;
 import dto.RoomDTO;
 import dto.UserDTO;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 import utils.DBUtils;
+import utils.EmailDispatcher;
 
 public class BookingDAO {
 
@@ -21,45 +33,149 @@ public class BookingDAO {
     public static final String STATUS_CONFIRMED = "Confirmed";          
     public static final String STATUS_CANCELLED = "Cancelled";           
 
-    // Thêm đặt phòng mới sau khi kiểm tra phòng có sẵn
-    public boolean addBooking(BookingDTO booking) throws ClassNotFoundException {
-        if (booking == null || !isRoomAvailable(booking.getRoom().getId(), booking.getCheckInDate(), booking.getCheckOutDate())) {
-            return false;
+    // Các bước chuyển trạng thái hợp lệ: PendingPayment -> Paid -> Confirmed, và hủy từ mọi trạng thái chưa hủy
+    private static final Map<String, Set<String>> TRANSITIONS = new HashMap<>();
+    // Ngược lại: các trạng thái được phép chuyển sang một trạng thái
+    private static final Map<String, Set<String>> SOURCES = new HashMap<>();
+
+    static {
+        allow(STATUS_PENDING_PAYMENT, STATUS_PAID);
+        allow(STATUS_PENDING_PAYMENT, STATUS_CANCELLED);
+        allow(STATUS_PAID, STATUS_CONFIRMED);
+        allow(STATUS_PAID, STATUS_CANCELLED);
+        allow(STATUS_CONFIRMED, STATUS_CANCELLED);
+    }
+
+    // Số tiền (VND, số nguyên) khách phải trả qua MoMo. total_price đã là giá sau giảm
+    // (BookingController lưu finalPrice) nên không trừ discount_amount lần nữa
+    private static final String AMOUNT_DUE_SQL = "CAST(total_price AS bigint)";
+
+    public static long amountDue(BookingDTO booking) {
+        return (long) booking.getTotalPrice();
+    }
+
+    private static void allow(String from, String to) {
+        TRANSITIONS.computeIfAbsent(from, k -> new LinkedHashSet<>()).add(to);
+        SOURCES.computeIfAbsent(to, k -> new LinkedHashSet<>()).add(from);
+    }
+
+    // Đọc đặt phòng kèm thông tin người dùng và phòng trong một truy vấn (thay cho readById/getRoomById mỗi dòng)
+    private static final String BOOKING_SELECT = "SELECT b.id, b.userID, b.room_id, b.check_in_date, b.check_out_date, b.total_price, "
+            + "b.status, b.created_at, b.promo_code, b.discount_amount, "
+            + "u.userID AS u_userID, u.fullName, u.roleID, u.gmail, u.sdt, u.avatar_url, u.isVerified, "
+            + "r.id AS r_id, r.name AS room_name, r.description AS room_description, r.price AS room_price, "
+            + "r.amenities AS room_amenities, r.image_url AS room_image_url, r.review_count AS room_review_count, "
+            + "CASE WHEN r.review_count = 0 THEN 0 ELSE r.rating_sum / r.review_count END AS room_avg_rating "
+            + "FROM bookings b "
+            + "LEFT JOIN tblUsers u ON u.userID = b.userID "
+            + "LEFT JOIN rooms r ON r.id = b.room_id ";
+
+    // Mã lỗi SQL Server khi vi phạm khóa chính / unique index
+    private static final int SQL_UNIQUE_VIOLATION = 2627;
+    private static final int SQL_UNIQUE_INDEX_VIOLATION = 2601;
+
+    public BookingDTO addBooking(BookingDTO booking) throws ClassNotFoundException {
+        return addBooking(booking, null, null);
+    }
+
+    /**
+     * Thêm đặt phòng mới trong một transaction: tính lượt dùng mã giảm giá (nếu
+     * có), insert lấy id và created_at do máy chủ sinh qua OUTPUT, giữ các đêm
+     * trong room_nights, rồi ghi email (kèm tham số bookingId) và thông báo.
+     * Nếu có đêm đã bị đặt, khóa chính (room_id, night_date) sẽ từ chối; nếu mã
+     * giảm giá vừa hết lượt hoặc hết hạn thì không có dòng nào được cập nhật.
+     * Cả hai trường hợp đều rollback toàn bộ.
+     *
+     * @return chính booking với id, status và createdAt đã gán, null nếu thất bại
+     */
+    public BookingDTO addBooking(BookingDTO booking, EmailOutboxDTO email, NotificationDTO notification) throws ClassNotFoundException {
+        if (booking == null || booking.getRoom() == null || !isValidRange(booking.getCheckInDate(), booking.getCheckOutDate())) {
+            return null;
         }
 
-        String sql = "INSERT INTO bookings (userID, room_id, check_in_date, check_out_date, total_price, status, created_at, promo_code, discount_amount) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
-        try (Connection conn = DBUtils.getConnection();
-                PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, booking.getUser().getUserID());
-            ps.setInt(2, booking.getRoom().getId());
-            ps.setDate(3, new java.sql.Date(booking.getCheckInDate().getTime()));
-            ps.setDate(4, new java.sql.Date(booking.getCheckOutDate().getTime()));
-            ps.setDouble(5, booking.getTotalPrice()); // Lưu giá gốc
-            ps.setString(6, STATUS_PENDING_PAYMENT); 
-            ps.setTimestamp(7, new Timestamp(booking.getCreatedAt().getTime()));
-            // Gán promo_code và discount_amount, nếu null thì gán giá trị mặc định
-            ps.setString(8, booking.getPromoCode() != null ? booking.getPromoCode() : "");
-            ps.setDouble(9, booking.getDiscountAmount() != 0 ? booking.getDiscountAmount() : 0.0);
-            return ps.executeUpdate() > 0;
+        String sql = "INSERT INTO bookings (userID, room_id, check_in_date, check_out_date, total_price, status, created_at, promo_code, discount_amount) "
+                + "OUTPUT inserted.id, inserted.created_at VALUES (?, ?, ?, ?, ?, ?, GETDATE(), ?, ?)";
+        String promoCode = booking.getPromoCode() != null ? booking.getPromoCode().trim() : "";
+        try (Connection conn = DBUtils.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                if (!promoCode.isEmpty() && !new PromotionDAO().consume(conn, promoCode)) {
+                    conn.rollback();
+                    System.err.println("Promotion " + promoCode + " is no longer usable");
+                    return null;
+                }
+
+                ps.setString(1, booking.getUser().getUserID());
+                ps.setInt(2, booking.getRoom().getId());
+                ps.setDate(3, new java.sql.Date(booking.getCheckInDate().getTime()));
+                ps.setDate(4, new java.sql.Date(booking.getCheckOutDate().getTime()));
+                ps.setDouble(5, booking.getTotalPrice()); // Lưu giá gốc
+                ps.setString(6, STATUS_PENDING_PAYMENT); 
+                // Gán promo_code và discount_amount, nếu null thì gán giá trị mặc định
+                ps.setString(7, promoCode);
+                ps.setDouble(8, booking.getDiscountAmount() != 0 ? booking.getDiscountAmount() : 0.0);
+                int bookingId;
+                Timestamp createdAt;
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        conn.rollback();
+                        return null;
+                    }
+                    bookingId = rs.getInt("id");
+                    createdAt = rs.getTimestamp("created_at");
+                }
+
+                claimNights(conn, bookingId, booking.getRoom().getId(), booking.getCheckInDate(), booking.getCheckOutDate());
+                if (email != null) {
+                    new EmailOutboxDAO().enqueue(conn, email.with("bookingId", String.valueOf(bookingId)));
+                }
+                if (notification != null) {
+                    new NotificationDAO().insert(conn, notification);
+                }
+                conn.commit();
+                booking.setId(bookingId);
+                booking.setStatus(STATUS_PENDING_PAYMENT);
+                booking.setCreatedAt(createdAt);
+                AvailabilityIndex.getInstance().add(bookingId, booking.getRoom().getId(),
+                        toLocalDate(booking.getCheckInDate()), toLocalDate(booking.getCheckOutDate()));
+                if (email != null) {
+                    EmailDispatcher.getInstance().nudge();
+                }
+                if (notification != null) {
+                    NotificationDAO.committed(Collections.singletonList(notification));
+                }
+                return booking;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
         } catch (SQLException e) {
-            System.err.println("Error adding booking: " + e.getMessage());
-            return false;
+            if (isUniqueViolation(e)) {
+                System.err.println("Room " + booking.getRoom().getId() + " already booked for the requested nights");
+            } else {
+                System.err.println("Error adding booking: " + e.getMessage());
+            }
+            return null;
         }
     }
 
-    // Kiểm tra phòng có sẵn không
+    // Kiểm tra phòng có sẵn không: trả lời từ AvailabilityIndex, chỉ hỏi room_nights khi chỉ mục chưa nạp
     public boolean isRoomAvailable(int roomId, java.util.Date checkIn, java.util.Date checkOut) throws ClassNotFoundException {
-        if (roomId <= 0 || checkIn == null || checkOut == null || checkOut.before(checkIn)) {
+        if (roomId <= 0 || !isValidRange(checkIn, checkOut)) {
             return false;
         }
 
-        String sql = "SELECT COUNT(*) FROM bookings WHERE room_id = ? AND (check_in_date < ? AND check_out_date > ?) AND status != ?";
+        Boolean indexed = AvailabilityIndex.getInstance().isAvailable(roomId, toLocalDate(checkIn), toLocalDate(checkOut));
+        if (indexed != null) {
+            return indexed;
+        }
+
+        String sql = "SELECT CASE WHEN EXISTS (SELECT 1 FROM room_nights WHERE room_id = ? AND night_date >= ? AND night_date < ?) THEN 1 ELSE 0 END";
         try (Connection conn = DBUtils.getConnection();
                 PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, roomId);
-            ps.setDate(2, new java.sql.Date(checkOut.getTime()));
-            ps.setDate(3, new java.sql.Date(checkIn.getTime()));
-            ps.setString(4, STATUS_CANCELLED);
+            ps.setDate(2, new java.sql.Date(checkIn.getTime()));
+            ps.setDate(3, new java.sql.Date(checkOut.getTime()));
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
                     return rs.getInt(1) == 0;
@@ -71,18 +187,66 @@ public class BookingDAO {
         return false;
     }
 
+    private boolean isValidRange(java.util.Date checkIn, java.util.Date checkOut) {
+        return checkIn != null && checkOut != null && checkOut.after(checkIn);
+    }
+
+    private LocalDate toLocalDate(java.util.Date date) {
+        return new java.sql.Date(date.getTime()).toLocalDate();
+    }
+
+    // Giữ từng đêm trong [checkIn, checkOut) bằng một batch insert
+    private void claimNights(Connection conn, int bookingId, int roomId, java.util.Date checkIn, java.util.Date checkOut) throws SQLException {
+        String sql = "INSERT INTO room_nights (room_id, night_date, booking_id) VALUES (?, ?, ?)";
+        LocalDate night = toLocalDate(checkIn);
+        LocalDate end = toLocalDate(checkOut);
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            while (night.isBefore(end)) {
+                ps.setInt(1, roomId);
+                ps.setDate(2, java.sql.Date.valueOf(night));
+                ps.setInt(3, bookingId);
+                ps.addBatch();
+                night = night.plusDays(1);
+            }
+            ps.executeBatch();
+        } catch (BatchUpdateException e) {
+            // Một số driver gói lỗi vi phạm khóa trong BatchUpdateException
+            SQLException cause = e.getNextException() != null ? e.getNextException() : e;
+            throw cause;
+        }
+    }
+
+    // Trả lại các đêm đã giữ của một đặt phòng
+    private void releaseNights(Connection conn, int bookingId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM room_nights WHERE booking_id = ?")) {
+            ps.setInt(1, bookingId);
+            ps.executeUpdate();
+        }
+    }
+
+    private boolean isUniqueViolation(SQLException e) {
+        for (SQLException ex = e; ex != null; ex = ex.getNextException()) {
+            if (ex.getErrorCode() == SQL_UNIQUE_VIOLATION || ex.getErrorCode() == SQL_UNIQUE_INDEX_VIOLATION) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     // Lấy danh sách đặt phòng theo userID
     public List<BookingDTO> getBookingsByUserId(String userID) throws ClassNotFoundException, Exception {
         List<BookingDTO> bookings = new ArrayList<>();
-        String sql = "SELECT * FROM bookings WHERE userID = ? ORDER BY created_at DESC";
+        String sql = BOOKING_SELECT + "WHERE b.userID = ? ORDER BY b.created_at DESC";
         try (Connection conn = DBUtils.getConnection();
                 PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, userID);
+            Map<Integer, RoomDTO> rooms = new HashMap<>();
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    bookings.add(mapResultSetToBooking(rs));
+                    bookings.add(mapResultSetToBooking(rs, rooms));
                 }
             }
+            new RoomDAO().loadRoomDetails(rooms, conn);
         } catch (SQLException e) {
             System.err.println("Error fetching bookings by user ID: " + e.getMessage());
         }
@@ -96,15 +260,17 @@ public class BookingDAO {
             return bookings;
         }
 
-        String sql = "SELECT * FROM bookings WHERE room_id = ? ORDER BY created_at DESC";
+        String sql = BOOKING_SELECT + "WHERE b.room_id = ? ORDER BY b.created_at DESC";
         try (Connection conn = DBUtils.getConnection();
                 PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, roomId);
+            Map<Integer, RoomDTO> rooms = new HashMap<>();
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    bookings.add(mapResultSetToBooking(rs));
+                    bookings.add(mapResultSetToBooking(rs, rooms));
                 }
             }
+            new RoomDAO().loadRoomDetails(rooms, conn);
         } catch (SQLException e) {
             System.err.println("Error fetching bookings by room ID: " + e.getMessage());
         }
@@ -112,28 +278,333 @@ public class BookingDAO {
     }
 
     // Hủy đặt phòng bằng cách cập nhật trạng thái
+    // Hủy đặt phòng từ bất kỳ trạng thái nào được phép chuyển sang Cancelled
     public boolean cancelBooking(int bookingId) throws ClassNotFoundException {
-        return updateBookingStatus(bookingId, STATUS_CANCELLED);
+        try {
+            return transition(bookingId, null, STATUS_CANCELLED) != null;
+        } catch (SQLException e) {
+            System.err.println("Error cancelling booking: " + e.getMessage());
+            return false;
+        }
     }
 
-    // Cập nhật trạng thái đặt phòng
-    public boolean updateBookingStatus(int bookingId, String status) throws ClassNotFoundException {
-        if (bookingId <= 0 || status == null || status.trim().isEmpty()) {
-            return false;
+    public static boolean canTransition(String from, String to) {
+        Set<String> targets = TRANSITIONS.get(from);
+        return targets != null && targets.contains(to);
+    }
+
+    public BookingTransitionDTO transition(int bookingId, String expectedFrom, String to) throws ClassNotFoundException, SQLException {
+        return transition(bookingId, null, expectedFrom, to, null);
+    }
+
+    public BookingTransitionDTO transition(int bookingId, String expectedFrom, String to,
+            Consumer<BookingTransitionDTO> effects) throws ClassNotFoundException, SQLException {
+        return transition(bookingId, null, expectedFrom, to, effects);
+    }
+
+    /**
+     * Chuyển trạng thái đặt phòng bằng một câu UPDATE có điều kiện
+     * (compare-and-set): chỉ thành công nếu đặt phòng đang ở expectedFrom (hoặc,
+     * khi expectedFrom là null, ở bất kỳ trạng thái nào được phép chuyển sang
+     * to theo TRANSITIONS) và thuộc về ownerId nếu ownerId khác null. Khi hủy,
+     * các đêm trong room_nights được trả lại trong cùng câu lệnh.
+     *
+     * effects (nếu có) được gọi với kết quả trước khi commit để gắn email và
+     * thông báo; chúng được ghi trong cùng transaction.
+     *
+     * @return các cột cần cho email/thông báo, null nếu trạng thái hiện tại
+     * không khớp hoặc đặt phòng không tồn tại
+     */
+    public BookingTransitionDTO transition(int bookingId, String ownerId, String expectedFrom, String to,
+            Consumer<BookingTransitionDTO> effects) throws ClassNotFoundException, SQLException {
+        if (expectedFrom != null && !canTransition(expectedFrom, to)) {
+            throw new IllegalArgumentException("Illegal booking transition " + expectedFrom + " -> " + to);
+        }
+        Set<String> from = expectedFrom != null ? Collections.singleton(expectedFrom) : SOURCES.get(to);
+        if (bookingId <= 0 || from == null) {
+            return null;
+        }
+
+        BookingTransitionDTO result;
+        try (Connection conn = DBUtils.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                result = transition(conn, bookingId, ownerId, from, to, null);
+                if (result == null) {
+                    conn.rollback();
+                    return null;
+                }
+                if (effects != null) {
+                    effects.accept(result);
+                    if (result.getEmail() != null) {
+                        new EmailOutboxDAO().enqueue(conn, result.getEmail());
+                    }
+                    new NotificationDAO().insertAll(conn, result.getNotifications());
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
         }
+        afterTransition(result);
+        return result;
+    }
 
-        String sql = "UPDATE bookings SET status = ? WHERE id = ?";
+    // Một lượt gửi tới SQL Server: UPDATE ... OUTPUT vào biến bảng, trả đêm nếu hủy, rồi đọc tên người dùng/phòng.
+    // amount khác null thì chỉ chuyển khi số tiền cần thanh toán (amountDue) bằng amount
+    private BookingTransitionDTO transition(Connection conn, int bookingId, String ownerId, Set<String> from, String to,
+            Long amount) throws SQLException {
+        StringBuilder sql = new StringBuilder("SET NOCOUNT ON; ")
+                .append("DECLARE @t TABLE (id int, userID varchar(50), room_id int, check_in_date date, check_out_date date, ")
+                .append("total_price decimal(10, 2), from_status nvarchar(50), to_status nvarchar(50)); ")
+                .append("UPDATE bookings SET status = ? ")
+                .append("OUTPUT inserted.id, inserted.userID, inserted.room_id, inserted.check_in_date, inserted.check_out_date, ")
+                .append("inserted.total_price, deleted.status, inserted.status INTO @t ")
+                .append("WHERE id = ? AND status IN (");
+        for (int i = 0; i < from.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+        if (ownerId != null) {
+            sql.append(" AND userID = ?");
+        }
+        if (amount != null) {
+            sql.append(" AND ").append(AMOUNT_DUE_SQL).append(" = ?");
+        }
+        sql.append("; ");
+        if (STATUS_CANCELLED.equals(to)) {
+            sql.append("DELETE rn FROM room_nights rn JOIN @t t ON t.id = rn.booking_id; ");
+        }
+        sql.append("SELECT t.*, u.fullName, u.gmail, r.name AS room_name FROM @t t ")
+                .append("LEFT JOIN tblUsers u ON u.userID = t.userID LEFT JOIN rooms r ON r.id = t.room_id;");
+
+        try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            int i = 1;
+            ps.setString(i++, to);
+            ps.setInt(i++, bookingId);
+            for (String status : from) {
+                ps.setString(i++, status);
+            }
+            if (ownerId != null) {
+                ps.setString(i++, ownerId);
+            }
+            if (amount != null) {
+                ps.setLong(i, amount);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new BookingTransitionDTO(rs.getInt("id"), rs.getString("userID"), rs.getString("fullName"),
+                        rs.getString("gmail"), rs.getInt("room_id"), rs.getString("room_name"),
+                        rs.getDate("check_in_date"), rs.getDate("check_out_date"), rs.getDouble("total_price"),
+                        rs.getString("from_status"), rs.getString("to_status"));
+            }
+        }
+    }
+
+    // Cập nhật chỉ mục phòng trống, bộ đếm thông báo và báo EmailDispatcher sau khi commit
+    private void afterTransition(BookingTransitionDTO result) {
+        if (STATUS_CANCELLED.equals(result.getToStatus())) {
+            AvailabilityIndex.getInstance().remove(result.getBookingId());
+        }
+        if (result.getEmail() != null) {
+            EmailDispatcher.getInstance().nudge();
+        }
+        NotificationDAO.committed(result.getNotifications());
+    }
+
+    /**
+     * Áp dụng thanh toán thành công: chuyển PendingPayment -> Paid bằng
+     * transition, rồi ghi email, thông báo và đánh dấu sự kiện thanh toán đã
+     * xử lý trong cùng một transaction. adminMessage (nếu có) được gửi cho mọi
+     * admin bằng một câu INSERT ... SELECT thay vì từng dòng.
+     *
+     * Điều kiện trạng thái và số tiền nằm trong cùng câu UPDATE: chỉ khi amount
+     * bằng số tiền cần thanh toán của đặt phòng mới chuyển sang Paid.
+     *
+     * @return trạng thái đã ghi cho sự kiện: Processed, hoặc Failed nếu đặt
+     * phòng không còn PendingPayment (đã thanh toán, đã hủy...) hay số tiền
+     * không khớp; khi đó admin và người đặt được báo để hoàn tiền (rejectPayment)
+     */
+    public String markPaid(int bookingId, long paymentEventId, String orderId, long amount, EmailOutboxDTO email,
+            List<NotificationDTO> notifications, String adminMessage) throws ClassNotFoundException, SQLException {
+        try (Connection conn = DBUtils.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                PaymentEventDAO eventDAO = new PaymentEventDAO();
+                BookingTransitionDTO result = transition(conn, bookingId, null, Collections.singleton(STATUS_PENDING_PAYMENT), STATUS_PAID, amount);
+                if (result == null) {
+                    return rejectPayment(conn, eventDAO, bookingId, paymentEventId, orderId, amount);
+                }
+                if (email != null) {
+                    new EmailOutboxDAO().enqueue(conn, email);
+                }
+                NotificationDAO notificationDAO = new NotificationDAO();
+                notificationDAO.insertAll(conn, notifications);
+                List<NotificationDTO> adminNotifications = adminMessage != null
+                        ? notificationDAO.insertForRole(conn, "AD", adminMessage) : Collections.<NotificationDTO>emptyList();
+                eventDAO.finish(conn, paymentEventId, PaymentEventDAO.STATUS_PROCESSED, null);
+                conn.commit();
+                result.setEmail(email);
+                result.getNotifications().addAll(notifications);
+                result.getNotifications().addAll(adminNotifications);
+                afterTransition(result);
+                return PaymentEventDAO.STATUS_PROCESSED;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Ghi nhận một thanh toán MoMo thành công không áp dụng được cho đặt phòng
+     * (không tồn tại, không còn PendingPayment, hoặc sai số tiền): tiền đã bị
+     * trừ nên sự kiện được đánh dấu Failed, mọi admin và người đặt (nếu biết)
+     * được báo trong cùng một transaction để xử lý hoàn tiền.
+     *
+     * @return PaymentEventDAO.STATUS_FAILED
+     */
+    public String rejectPayment(int bookingId, long paymentEventId, String orderId, long amount)
+            throws ClassNotFoundException, SQLException {
+        try (Connection conn = DBUtils.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                return rejectPayment(conn, new PaymentEventDAO(), bookingId, paymentEventId, orderId, amount);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private String rejectPayment(Connection conn, PaymentEventDAO eventDAO, int bookingId, long paymentEventId,
+            String orderId, long amount) throws SQLException {
+        String status = null;
+        String userId = null;
+        long due = 0;
+        try (PreparedStatement ps = conn.prepareStatement("SELECT status, userID, " + AMOUNT_DUE_SQL + " AS amount_due FROM bookings WHERE id = ?")) {
+            ps.setInt(1, bookingId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    status = rs.getString("status");
+                    userId = rs.getString("userID");
+                    due = rs.getLong("amount_due");
+                }
+            }
+        }
+        String paid = String.format("%,d", amount);
+        String reason;
+        String adminMessage;
+        String userMessage;
+        if (status == null) {
+            reason = "Ignored payment, refund needed: booking not found";
+            adminMessage = "Cảnh báo: giao dịch MoMo " + orderId + " đã thanh toán " + paid + " VND cho đặt phòng (ID: " + bookingId
+                    + ") không tồn tại. Cần hoàn tiền cho khách.";
+            userMessage = null;
+        } else if (!STATUS_PENDING_PAYMENT.equals(status)) {
+            reason = "Ignored payment, refund needed: booking status is " + status;
+            adminMessage = "Cảnh báo: giao dịch MoMo " + orderId + " đã thanh toán " + paid + " VND cho đặt phòng (ID: " + bookingId
+                    + ") đang ở trạng thái " + status + " nên không được áp dụng. Cần hoàn tiền cho khách.";
+            userMessage = "Khoản thanh toán " + paid + " VND (mã giao dịch " + orderId + ") cho đặt phòng (ID: " + bookingId
+                    + ") không được áp dụng vì đặt phòng đã được thanh toán hoặc đã bị hủy. Chúng tôi sẽ liên hệ để hoàn tiền.";
+        } else {
+            reason = "Amount mismatch, refund needed: paid " + amount + ", due " + due;
+            adminMessage = "Cảnh báo: giao dịch MoMo " + orderId + " cho đặt phòng (ID: " + bookingId + ") có số tiền "
+                    + paid + " VND, không khớp số tiền cần thanh toán " + String.format("%,d", due)
+                    + " VND. Đặt phòng chưa được chuyển sang đã thanh toán, cần hoàn tiền cho khách.";
+            userMessage = "Khoản thanh toán " + paid + " VND (mã giao dịch " + orderId + ") không khớp số tiền cần thanh toán cho đặt phòng (ID: "
+                    + bookingId + "). Đặt phòng vẫn chờ thanh toán; chúng tôi sẽ liên hệ để hoàn tiền.";
+        }
+        eventDAO.finish(conn, paymentEventId, PaymentEventDAO.STATUS_FAILED, reason);
+        NotificationDAO notificationDAO = new NotificationDAO();
+        List<NotificationDTO> alerts = new ArrayList<>(notificationDAO.insertForRole(conn, "AD", adminMessage));
+        if (userId != null) {
+            NotificationDTO payer = new NotificationDTO(0, userId, userMessage, null, false);
+            notificationDAO.insertAll(conn, Collections.singletonList(payer));
+            alerts.add(payer);
+        }
+        conn.commit();
+        NotificationDAO.committed(alerts);
+        return PaymentEventDAO.STATUS_FAILED;
+    }
+
+    // Chỉ đọc trạng thái của đặt phòng (dùng cho trang kết quả thanh toán), null nếu không tồn tại
+    public String getStatus(int bookingId) throws ClassNotFoundException {
+        String sql = "SELECT status FROM bookings WHERE id = ?";
         try (Connection conn = DBUtils.getConnection();
                 PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, status);
-            ps.setInt(2, bookingId);
-            return ps.executeUpdate() > 0;
+            ps.setInt(1, bookingId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString("status") : null;
+            }
         } catch (SQLException e) {
-            System.err.println("Error updating booking status: " + e.getMessage());
-            return false;
+            System.err.println("Error fetching booking status: " + e.getMessage());
+            return null;
         }
     }
 
+    /**
+     * Hủy tối đa limit đặt phòng còn PendingPayment đã tạo quá ttlMinutes phút
+     * (theo đồng hồ máy chủ CSDL, như created_at) trong một transaction: đổi
+     * trạng thái bằng một câu UPDATE theo tập, trả các đêm trong room_nights
+     * và ghi thông báo cho người đặt. Dòng đang bị transaction
+     * khác khóa (ví dụ đang được đánh dấu Paid) được bỏ qua (READPAST) và xét
+     * lại ở lần sau.
+     *
+     * @return id các đặt phòng đã hủy
+     */
+    public List<Integer> expireUnpaid(long ttlMinutes, int limit) throws ClassNotFoundException, SQLException {
+        String sql = "SET NOCOUNT ON; "
+                + "DECLARE @expired TABLE (id int PRIMARY KEY, userID varchar(50), room_id int); "
+                + "UPDATE TOP (?) bookings WITH (ROWLOCK, READPAST) SET status = ? "
+                + "OUTPUT inserted.id, inserted.userID, inserted.room_id INTO @expired "
+                + "WHERE status = ? AND created_at < DATEADD(MINUTE, -?, GETDATE()); "
+                + "DELETE rn FROM room_nights rn JOIN @expired e ON e.id = rn.booking_id; "
+                + "DECLARE @notified TABLE (notification_id int, user_id varchar(50), message nvarchar(max), created_at datetime); "
+                + "INSERT INTO notifications (user_id, message) "
+                + "OUTPUT inserted.notification_id, inserted.user_id, inserted.message, inserted.created_at INTO @notified "
+                + "SELECT e.userID, CONCAT(N'Đặt phòng ''', r.name, N''' (ID: ', e.id, N') đã bị hủy do quá thời hạn thanh toán.') "
+                + "FROM @expired e LEFT JOIN rooms r ON r.id = e.room_id; "
+                + "SELECT id FROM @expired; "
+                + "SELECT notification_id, user_id, message, created_at FROM @notified;";
+        List<Integer> expired = new ArrayList<>();
+        List<NotificationDTO> notifications = new ArrayList<>();
+        try (Connection conn = DBUtils.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setInt(1, limit);
+                ps.setString(2, STATUS_CANCELLED);
+                ps.setString(3, STATUS_PENDING_PAYMENT);
+                ps.setLong(4, ttlMinutes);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        expired.add(rs.getInt("id"));
+                    }
+                }
+                if (ps.getMoreResults()) {
+                    try (ResultSet rs = ps.getResultSet()) {
+                        while (rs.next()) {
+                            notifications.add(new NotificationDTO(rs.getInt("notification_id"), rs.getString("user_id"),
+                                    rs.getString("message"), rs.getTimestamp("created_at"), false));
+                        }
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        for (int bookingId : expired) {
+            AvailabilityIndex.getInstance().remove(bookingId);
+        }
+        NotificationDAO.committed(notifications);
+        return expired;
+    }
+
     // Xóa đặt phòng hoàn toàn khỏi cơ sở dữ liệu
     public boolean delete(int bookingId) throws ClassNotFoundException {
         if (bookingId <= 0) {
@@ -145,6 +616,9 @@ public class BookingDAO {
                 PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, bookingId);
             int affectedRows = ps.executeUpdate();
+            if (affectedRows > 0) {
+                AvailabilityIndex.getInstance().remove(bookingId);
+            }
             return affectedRows > 0;
         } catch (SQLException e) {
             System.err.println("Error deleting booking: " + e.getMessage());
@@ -152,13 +626,43 @@ public class BookingDAO {
         }
     }
 
-    // Map dữ liệu từ ResultSet sang BookingDTO
-    private BookingDTO mapResultSetToBooking(ResultSet rs) throws SQLException, Exception {
-        UserDAO userDAO = new UserDAO();
-        UserDTO user = userDAO.readById(rs.getString("userID"));
+    // Map dữ liệu từ ResultSet (đã join tblUsers và rooms) sang BookingDTO.
+    // Các đặt phòng cùng phòng dùng chung một RoomDTO; ảnh chi tiết được nạp sau bằng loadRoomDetails
+    private BookingDTO mapResultSetToBooking(ResultSet rs, Map<Integer, RoomDTO> rooms) throws SQLException {
+        UserDTO user = null;
+        if (rs.getString("u_userID") != null) {
+            user = new UserDTO(
+                    rs.getString("u_userID"),
+                    rs.getString("fullName"),
+                    rs.getString("roleID"),
+                    null,
+                    rs.getString("gmail"),
+                    rs.getString("sdt"),
+                    rs.getString("avatar_url"),
+                    null,
+                    rs.getBoolean("isVerified")
+            );
+        }
 
-        RoomDAO roomDAO = new RoomDAO();
-        RoomDTO room = roomDAO.getRoomById(rs.getInt("room_id"));
+        RoomDTO room = null;
+        int roomId = rs.getInt("r_id");
+        if (!rs.wasNull()) {
+            room = rooms.get(roomId);
+            if (room == null) {
+                room = new RoomDTO(
+                        roomId,
+                        rs.getString("room_name"),
+                        rs.getString("room_description"),
+                        rs.getDouble("room_price"),
+                        rs.getString("room_amenities"),
+                        rs.getString("room_image_url"),
+                        null,
+                        rs.getDouble("room_avg_rating"),
+                        rs.getInt("room_review_count")
+                );
+                rooms.put(roomId, room);
+            }
+        }
 
         BookingDTO booking = new BookingDTO(
                 rs.getInt("id"),
@@ -189,13 +693,16 @@ public class BookingDAO {
             return null;
         }
 
-        String sql = "SELECT * FROM bookings WHERE id = ?";
+        String sql = BOOKING_SELECT + "WHERE b.id = ?";
         try (Connection conn = DBUtils.getConnection();
                 PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, bookingId);
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
-                    return mapResultSetToBooking(rs);
+                    Map<Integer, RoomDTO> rooms = new HashMap<>();
+                    BookingDTO booking = mapResultSetToBooking(rs, rooms);
+                    new RoomDAO().loadRoomDetails(rooms, conn);
+                    return booking;
                 }
             }
         } catch (SQLException e) {
@@ -210,7 +717,7 @@ public class BookingDAO {
             return null;
         }
 
-        String sql = "SELECT * FROM bookings WHERE userID = ? AND room_id = ? AND status != ?";
+        String sql = BOOKING_SELECT + "WHERE b.userID = ? AND b.room_id = ? AND b.status != ?";
         try (Connection conn = DBUtils.getConnection();
                 PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, userId);
@@ -218,7 +725,10 @@ public class BookingDAO {
             ps.setString(3, STATUS_CANCELLED);
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
-                    return mapResultSetToBooking(rs);
+                    Map<Integer, RoomDTO> rooms = new HashMap<>();
+                    BookingDTO booking = mapResultSetToBooking(rs, rooms);
+                    new RoomDAO().loadRoomDetails(rooms, conn);
+                    return booking;
                 }
             }
         } catch (SQLException e) {
@@ -230,14 +740,16 @@ public class BookingDAO {
     // Lấy tất cả đặt phòng
     public List<BookingDTO> getAllBookings() throws ClassNotFoundException, Exception {
         List<BookingDTO> bookings = new ArrayList<>();
-        String sql = "SELECT * FROM bookings ORDER BY created_at DESC";
+        String sql = BOOKING_SELECT + "ORDER BY b.created_at DESC";
         try (Connection conn = DBUtils.getConnection();
                 PreparedStatement ps = conn.prepareStatement(sql)) {
+            Map<Integer, RoomDTO> rooms = new HashMap<>();
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    bookings.add(mapResultSetToBooking(rs));
+                    bookings.add(mapResultSetToBooking(rs, rooms));
                 }
             }
+            new RoomDAO().loadRoomDetails(rooms, conn);
         } catch (SQLException e) {
             System.err.println("Error fetching all bookings: " + e.getMessage());
         }
@@ -251,17 +763,19 @@ public class BookingDAO {
             return bookingList;
         }
 
-        String sql = "SELECT * FROM bookings WHERE created_at BETWEEN ? AND ? ORDER BY created_at DESC";
+        String sql = BOOKING_SELECT + "WHERE b.created_at BETWEEN ? AND ? ORDER BY b.created_at DESC";
         try (Connection conn = DBUtils.getConnection();
                 PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setTimestamp(1, new Timestamp(startDate.getTime()));
             ps.setTimestamp(2, new Timestamp(endDate.getTime()));
 
+            Map<Integer, RoomDTO> rooms = new HashMap<>();
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    bookingList.add(mapResultSetToBooking(rs));
+                    bookingList.add(mapResultSetToBooking(rs, rooms));
                 }
             }
+            new RoomDAO().loadRoomDetails(rooms, conn);
         } catch (SQLException e) {
             System.err.println("Error fetching bookings by date range: " + e.getMessage());
             throw new Exception("Lỗi khi truy vấn dữ liệu đặt phòng theo khoảng thời gian: " + e.getMessage(), e);
@@ -269,21 +783,6 @@ public class BookingDAO {
         return bookingList;
     }
 
-    // Lấy ID của đặt phòng vừa được thêm vào
-    public int getLastInsertedBookingId() throws ClassNotFoundException {
-        String sql = "SELECT MAX(id) FROM bookings";
-        try (Connection conn = DBUtils.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-            if (rs.next()) {
-                return rs.getInt(1);
-            }
-        } catch (SQLException e) {
-            System.err.println("Error fetching last inserted booking ID: " + e.getMessage());
-        }
-        return -1; // Trả về -1 nếu có lỗi hoặc không tìm thấy
-    }
-
     // Hàm mới: Kiểm tra xem một đặt phòng có tồn tại hay không
     public boolean existsBooking(int bookingId) throws ClassNotFoundException {
         if (bookingId <= 0) {
@@ -312,43 +811,67 @@ public class BookingDAO {
             return bookings;
         }
 
-        String sql = "SELECT * FROM bookings WHERE status = ? ORDER BY created_at DESC";
+        String sql = BOOKING_SELECT + "WHERE b.status = ? ORDER BY b.created_at DESC";
         try (Connection conn = DBUtils.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, status);
+            Map<Integer, RoomDTO> rooms = new HashMap<>();
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    bookings.add(mapResultSetToBooking(rs));
+                    bookings.add(mapResultSetToBooking(rs, rooms));
                 }
             }
+            new RoomDAO().loadRoomDetails(rooms, conn);
         } catch (SQLException e) {
             System.err.println("Error fetching bookings by status: " + e.getMessage());
         }
         return bookings;
     }
 
-    // Hàm mới: Cập nhật thông tin đặt phòng
+    // Hàm mới: Cập nhật thông tin đặt phòng (giữ lại các đêm theo phòng/ngày mới)
     public boolean updateBooking(BookingDTO booking) throws ClassNotFoundException {
-        if (booking == null || booking.getId() <= 0) {
+        if (booking == null || booking.getId() <= 0 || !isValidRange(booking.getCheckInDate(), booking.getCheckOutDate())) {
             return false;
         }
 
         String sql = "UPDATE bookings SET userID = ?, room_id = ?, check_in_date = ?, check_out_date = ?, total_price = ?, status = ?, promo_code = ?, discount_amount = ? WHERE id = ?";
-        try (Connection conn = DBUtils.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, booking.getUser().getUserID());
-            ps.setInt(2, booking.getRoom().getId());
-            ps.setDate(3, new java.sql.Date(booking.getCheckInDate().getTime()));
-            ps.setDate(4, new java.sql.Date(booking.getCheckOutDate().getTime()));
-            ps.setDouble(5, booking.getTotalPrice());
-            ps.setString(6, booking.getStatus());
-            ps.setString(7, booking.getPromoCode());
-            ps.setDouble(8, booking.getDiscountAmount());
-            ps.setInt(9, booking.getId());
-            return ps.executeUpdate() > 0;
+        try (Connection conn = DBUtils.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, booking.getUser().getUserID());
+                ps.setInt(2, booking.getRoom().getId());
+                ps.setDate(3, new java.sql.Date(booking.getCheckInDate().getTime()));
+                ps.setDate(4, new java.sql.Date(booking.getCheckOutDate().getTime()));
+                ps.setDouble(5, booking.getTotalPrice());
+                ps.setString(6, booking.getStatus());
+                ps.setString(7, booking.getPromoCode());
+                ps.setDouble(8, booking.getDiscountAmount());
+                ps.setInt(9, booking.getId());
+                if (ps.executeUpdate() == 0) {
+                    conn.rollback();
+                    return false;
+                }
+
+                releaseNights(conn, booking.getId());
+                boolean active = !STATUS_CANCELLED.equals(booking.getStatus());
+                if (active) {
+                    claimNights(conn, booking.getId(), booking.getRoom().getId(), booking.getCheckInDate(), booking.getCheckOutDate());
+                }
+                conn.commit();
+                if (active) {
+                    AvailabilityIndex.getInstance().add(booking.getId(), booking.getRoom().getId(),
+                            toLocalDate(booking.getCheckInDate()), toLocalDate(booking.getCheckOutDate()));
+                } else {
+                    AvailabilityIndex.getInstance().remove(booking.getId());
+                }
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
         } catch (SQLException e) {
             System.err.println("Error updating booking: " + e.getMessage());
             return false;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,152 @@
+package dao;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import dto.EmailOutboxDTO;
+import java.lang.reflect.Type;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import utils.DBUtils;
+
+/**
+ * Bảng email_outbox: email được ghi vào đây cùng transaction với thay đổi
+ * nghiệp vụ (đặt phòng, thanh toán, đăng ký...) và được EmailDispatcher gửi
+ * ở nền. Thời gian trong bảng dùng UTC (SYSUTCDATETIME).
+ */
+public class EmailOutboxDAO {
+
+    private static final Logger LOGGER = Logger.getLogger(EmailOutboxDAO.class.getName());
+    private static final Gson GSON = new Gson();
+    private static final Type PARAMS_TYPE = new TypeToken<LinkedHashMap<String, String>>() {
+    }.getType();
+
+    public static final String STATUS_PENDING = "Pending";
+    public static final String STATUS_SENDING = "Sending";
+    public static final String STATUS_SENT = "Sent";
+    public static final String STATUS_DEAD = "Dead";
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    // Ghi email vào outbox bằng kết nối (và transaction) của người gọi
+    void enqueue(Connection conn, EmailOutboxDTO email) throws SQLException {
+        String sql = "INSERT INTO email_outbox (to_email, email_type, payload) VALUES (?, ?, ?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, email.getToEmail());
+            ps.setString(2, email.getEmailType());
+            ps.setString(3, GSON.toJson(email.getParams()));
+            ps.executeUpdate();
+        }
+    }
+
+    // Ghi email vào outbox khi không có thay đổi nghiệp vụ đi kèm
+    public boolean enqueue(EmailOutboxDTO email) {
+        try (Connection conn = DBUtils.getConnection()) {
+            enqueue(conn, email);
+            return true;
+        } catch (ClassNotFoundException | SQLException ex) {
+            LOGGER.log(Level.SEVERE, "Error enqueuing email", ex);
+        }
+        return false;
+    }
+
+    /**
+     * Nhận tối đa limit email đến hạn gửi và giữ chúng trong leaseSeconds giây.
+     * READPAST cho phép nhiều node cùng lấy mà không tranh nhau; email có lease
+     * hết hạn (node gửi bị dừng giữa chừng) được lấy lại.
+     */
+    public List<EmailOutboxDTO> claimDue(int limit, int leaseSeconds) throws ClassNotFoundException, SQLException {
+        String sql = "UPDATE TOP (?) email_outbox WITH (ROWLOCK, READPAST) "
+                + "SET status = ?, attempts = attempts + 1, locked_until = DATEADD(SECOND, ?, SYSUTCDATETIME()) "
+                + "OUTPUT inserted.id, inserted.to_email, inserted.email_type, inserted.payload, inserted.attempts "
+                + "WHERE (status = ? AND next_attempt_at <= SYSUTCDATETIME()) "
+                + "OR (status = ? AND locked_until < SYSUTCDATETIME())";
+        List<EmailOutboxDTO> claimed = new ArrayList<>();
+        try (Connection conn = DBUtils.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, limit);
+            ps.setString(2, STATUS_SENDING);
+            ps.setInt(3, leaseSeconds);
+            ps.setString(4, STATUS_PENDING);
+            ps.setString(5, STATUS_SENDING);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Map<String, String> params = GSON.fromJson(rs.getString("payload"), PARAMS_TYPE);
+                    claimed.add(new EmailOutboxDTO(rs.getLong("id"), rs.getString("to_email"),
+                            rs.getString("email_type"), params, rs.getInt("attempts")));
+                }
+            }
+        }
+        return claimed;
+    }
+
+    public void markSent(long id) {
+        update("UPDATE email_outbox SET status = ?, sent_at = SYSUTCDATETIME(), locked_until = NULL, last_error = NULL WHERE id = ?",
+                id, STATUS_SENT, id);
+    }
+
+    // Trả email về hàng đợi, gửi lại sau delaySeconds giây
+    public void markRetry(long id, int delaySeconds, String error) {
+        update("UPDATE email_outbox SET status = ?, next_attempt_at = DATEADD(SECOND, ?, SYSUTCDATETIME()), "
+                + "locked_until = NULL, last_error = ? WHERE id = ?",
+                id, STATUS_PENDING, Math.max(0, delaySeconds), truncate(error), id);
+    }
+
+    // Hết số lần thử: chuyển sang dead-letter để admin xem và gửi lại thủ công
+    public void markDead(long id, String error) {
+        update("UPDATE email_outbox SET status = ?, locked_until = NULL, last_error = ? WHERE id = ?",
+                id, STATUS_DEAD, truncate(error), id);
+    }
+
+    // Đưa toàn bộ email dead-letter về hàng đợi, trả về số email được gửi lại
+    public int requeueDead() throws ClassNotFoundException, SQLException {
+        String sql = "UPDATE email_outbox SET status = ?, attempts = 0, next_attempt_at = SYSUTCDATETIME() WHERE status = ?";
+        try (Connection conn = DBUtils.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, STATUS_PENDING);
+            ps.setString(2, STATUS_DEAD);
+            return ps.executeUpdate();
+        }
+    }
+
+    public Map<String, Integer> countByStatus() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        String sql = "SELECT status, COUNT(*) AS total FROM email_outbox GROUP BY status";
+        try (Connection conn = DBUtils.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql);
+                ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                counts.put(rs.getString("status"), rs.getInt("total"));
+            }
+        } catch (ClassNotFoundException | SQLException ex) {
+            LOGGER.log(Level.SEVERE, "Error counting email outbox", ex);
+        }
+        return counts;
+    }
+
+    private void update(String sql, long id, Object... params) {
+        try (Connection conn = DBUtils.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            ps.executeUpdate();
+        } catch (ClassNotFoundException | SQLException ex) {
+            LOGGER.log(Level.SEVERE, "Error updating email outbox entry " + id, ex);
+        }
+    }
+
+    private String truncate(String error) {
+        if (error == null || error.length() <= MAX_ERROR_LENGTH) {
+            return error;
+        }
+        return error.substring(0, MAX_ERROR_LENGTH);
+    }
+}
@@ -2,48 +2,273 @@ package dao;
 
 import dto.NotificationDTO;
 import utils.DBUtils;
+import utils.NotificationHub;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class NotificationDAO {
 
+    // Số dòng mỗi câu INSERT nhiều VALUES (SQL Server giới hạn 1000 dòng và 2100 tham số)
+    private static final int INSERT_CHUNK = 500;
+    // Số dòng mỗi lô khi đánh dấu đã đọc hàng loạt (dưới ngưỡng leo thang khóa 5000)
+    private static final int MARK_READ_CHUNK = 1000;
+    // Số người dùng mỗi transaction khi gửi thông báo cho tất cả, để log giao dịch không phình to
+    private static final int BROADCAST_CHUNK = Integer.getInteger("homestay.notification.broadcastChunk", 5000);
+
     // Thêm thông báo mới
     public boolean addNotification(NotificationDTO notification) {
-        String sql = "INSERT INTO notifications (user_id, message) VALUES (?, ?)";
-        try (Connection conn = DBUtils.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = DBUtils.getConnection()) {
+            if (insert(conn, notification)) {
+                committed(Collections.singletonList(notification));
+                return true;
+            }
+        } catch (ClassNotFoundException | SQLException ex) {
+            Logger.getLogger(NotificationDAO.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return false;
+    }
+
+    // Thêm thông báo bằng kết nối (và transaction) của người gọi; id và created_at được gán lại vào notification.
+    // Người gọi phải gọi committed() sau khi commit
+    boolean insert(Connection conn, NotificationDTO notification) throws SQLException {
+        String sql = "INSERT INTO notifications (user_id, message) OUTPUT inserted.notification_id, inserted.created_at VALUES (?, ?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, notification.getUserId());
             ps.setString(2, notification.getMessage());
-            return ps.executeUpdate() > 0;
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                notification.setNotificationId(rs.getInt("notification_id"));
+                notification.setCreatedAt(rs.getTimestamp("created_at"));
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Thêm nhiều thông báo bằng kết nối (và transaction) của người gọi: mỗi lô
+     * INSERT_CHUNK dòng là một câu INSERT nhiều VALUES, id và created_at được
+     * gán lại qua OUTPUT. Người gọi phải gọi committed() sau khi commit.
+     */
+    void insertAll(Connection conn, List<NotificationDTO> notifications) throws SQLException {
+        for (int from = 0; from < notifications.size(); from += INSERT_CHUNK) {
+            List<NotificationDTO> chunk = notifications.subList(from, Math.min(notifications.size(), from + INSERT_CHUNK));
+            StringBuilder sql = new StringBuilder("INSERT INTO notifications (user_id, message) "
+                    + "OUTPUT inserted.notification_id, inserted.user_id, inserted.message, inserted.created_at VALUES ");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "(?, ?)" : ", (?, ?)");
+            }
+            // OUTPUT không giữ thứ tự VALUES nên ghép lại theo (user_id, message); các dòng trùng khóa là như nhau
+            Map<String, Deque<NotificationDTO>> byKey = new HashMap<>();
+            try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+                int i = 1;
+                for (NotificationDTO notification : chunk) {
+                    ps.setString(i++, notification.getUserId());
+                    ps.setString(i++, notification.getMessage());
+                    byKey.computeIfAbsent(notification.getUserId() + '\u0000' + notification.getMessage(), k -> new ArrayDeque<>()).add(notification);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Deque<NotificationDTO> same = byKey.get(rs.getString("user_id") + '\u0000' + rs.getString("message"));
+                        NotificationDTO notification = same != null ? same.poll() : null;
+                        if (notification != null) {
+                            notification.setNotificationId(rs.getInt("notification_id"));
+                            notification.setCreatedAt(rs.getTimestamp("created_at"));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gửi cùng một thông báo cho mọi người dùng có roleId bằng một câu
+     * INSERT ... SELECT, trong transaction của người gọi.
+     *
+     * @return các thông báo đã thêm, để truyền cho committed() sau khi commit
+     */
+    List<NotificationDTO> insertForRole(Connection conn, String roleId, String message) throws SQLException {
+        String sql = "INSERT INTO notifications (user_id, message) "
+                + "OUTPUT inserted.notification_id, inserted.user_id, inserted.message, inserted.created_at "
+                + "SELECT userID, ? FROM tblUsers WHERE roleID = ?";
+        List<NotificationDTO> inserted = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, message);
+            ps.setString(2, roleId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    inserted.add(new NotificationDTO(rs.getInt("notification_id"), rs.getString("user_id"),
+                            rs.getString("message"), rs.getTimestamp("created_at"), false));
+                }
+            }
+        }
+        return inserted;
+    }
+
+    // Gửi thông báo cho mọi người dùng có roleId (ví dụ "AD" cho tất cả admin)
+    public int notifyRole(String roleId, String message) {
+        try (Connection conn = DBUtils.getConnection()) {
+            List<NotificationDTO> inserted = insertForRole(conn, roleId, message);
+            committed(inserted);
+            return inserted.size();
         } catch (ClassNotFoundException | SQLException ex) {
             Logger.getLogger(NotificationDAO.class.getName()).log(Level.SEVERE, null, ex);
         }
-        return false;
+        return 0;
     }
 
-    // Lấy danh sách thông báo theo userId
-    public List<NotificationDTO> getNotificationsByUserId(String userId) {
+    /**
+     * Gửi thông báo cho tất cả người dùng. Người dùng được chia theo khoảng
+     * userID, mỗi khoảng BROADCAST_CHUNK người là một câu INSERT ... SELECT
+     * tự commit, nên không có transaction nào giữ hàng triệu dòng. Nếu lỗi giữa
+     * chừng, các lô đã commit được giữ lại và số đã gửi được ghi log.
+     *
+     * @return số thông báo đã thêm
+     */
+    public int broadcast(String message) throws ClassNotFoundException, SQLException {
+        String boundarySql = "SELECT MAX(userID) FROM (SELECT TOP (?) userID FROM tblUsers WHERE userID > ? ORDER BY userID) t";
+        String insertSql = "INSERT INTO notifications (user_id, message) SELECT userID, ? FROM tblUsers WHERE userID > ? AND userID <= ?";
+        int total = 0;
+        String after = "";
+        try (Connection conn = DBUtils.getConnection();
+             PreparedStatement boundary = conn.prepareStatement(boundarySql);
+             PreparedStatement insert = conn.prepareStatement(insertSql)) {
+            while (true) {
+                boundary.setInt(1, BROADCAST_CHUNK);
+                boundary.setString(2, after);
+                String last;
+                try (ResultSet rs = boundary.executeQuery()) {
+                    last = rs.next() ? rs.getString(1) : null;
+                }
+                if (last == null) {
+                    break;
+                }
+                insert.setString(1, message);
+                insert.setString(2, after);
+                insert.setString(3, last);
+                total += insert.executeUpdate();
+                after = last;
+            }
+        } catch (SQLException ex) {
+            Logger.getLogger(NotificationDAO.class.getName()).log(Level.SEVERE, "Broadcast stopped after " + total + " notification(s)", ex);
+            throw ex;
+        } finally {
+            if (total > 0) {
+                // Không đẩy từng thông báo; người dùng đang kết nối nhận số chưa đọc mới, danh sách có khi tải trang
+                UnreadCounter counter = UnreadCounter.getInstance();
+                counter.addAll(1);
+                NotificationHub hub = NotificationHub.getInstance();
+                for (String userId : hub.users()) {
+                    hub.unreadChanged(userId, counter.peek(userId));
+                }
+            }
+        }
+        return total;
+    }
+
+    // Cập nhật bộ đếm chưa đọc và đẩy tới các kết nối SSE sau khi các thông báo mới đã được commit
+    static void committed(Collection<NotificationDTO> notifications) {
+        UnreadCounter counter = UnreadCounter.getInstance();
+        for (NotificationDTO notification : notifications) {
+            // Số chưa đọc đi kèm sự kiện để listener không phải hỏi lại (có thể truy vấn DB) trên luồng này
+            int unread = counter.add(notification.getUserId(), 1);
+            NotificationHub.getInstance().publish(notification, unread);
+        }
+    }
+
+    /**
+     * Một trang hộp thư theo keyset trên (created_at, notification_id), mới
+     * nhất trước. Con trỏ là thông báo ở mép trang đang xem: older = true lấy
+     * các thông báo cũ hơn nó, false lấy các thông báo mới hơn; con trỏ null
+     * là trang mới nhất. Mỗi trang chỉ seek trên chỉ mục theo user_id nên chi
+     * phí không phụ thuộc vào độ dài lịch sử.
+     *
+     * @return tối đa limit + 1 thông báo (mới nhất trước); có dòng thứ limit + 1
+     * nghĩa là còn trang tiếp theo theo hướng đã chọn
+     */
+    public List<NotificationDTO> getInboxPage(String userId, boolean unreadOnly, Timestamp cursorCreatedAt, int cursorId,
+            boolean older, int limit) {
         List<NotificationDTO> notifications = new ArrayList<>();
-        String sql = "SELECT notification_id, user_id, message, created_at, is_read FROM notifications WHERE user_id = ? ORDER BY created_at DESC";
+        StringBuilder sql = new StringBuilder("SELECT TOP (?) notification_id, user_id, message, created_at, is_read FROM notifications WHERE user_id = ?");
+        if (unreadOnly) {
+            sql.append(" AND is_read = 0");
+        }
+        if (cursorCreatedAt != null) {
+            // created_at là datetime: ép tham số về datetime để so sánh đúng với giá trị đã làm tròn
+            String cmp = older ? "<" : ">";
+            sql.append(" AND (created_at ").append(cmp).append(" CAST(? AS datetime) OR (created_at = CAST(? AS datetime) AND notification_id ")
+                    .append(cmp).append(" ?))");
+        }
+        sql.append(older || cursorCreatedAt == null
+                ? " ORDER BY created_at DESC, notification_id DESC"
+                : " ORDER BY created_at ASC, notification_id ASC");
+        try (Connection conn = DBUtils.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            int i = 1;
+            ps.setInt(i++, limit + 1);
+            ps.setString(i++, userId);
+            if (cursorCreatedAt != null) {
+                ps.setTimestamp(i++, cursorCreatedAt);
+                ps.setTimestamp(i++, cursorCreatedAt);
+                ps.setInt(i, cursorId);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    notifications.add(new NotificationDTO(
+                        rs.getInt("notification_id"),
+                        rs.getString("user_id"),
+                        rs.getString("message"),
+                        rs.getTimestamp("created_at"),
+                        rs.getBoolean("is_read")
+                    ));
+                }
+            }
+        } catch (ClassNotFoundException | SQLException ex) {
+            Logger.getLogger(NotificationDAO.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        if (!older && cursorCreatedAt != null) {
+            // Trang mới hơn được đọc theo chiều tăng; đảo lại, dòng thừa (nếu có) nằm cuối như chiều kia
+            Collections.reverse(notifications);
+            if (notifications.size() > limit) {
+                notifications.add(notifications.remove(0));
+            }
+        }
+        return notifications;
+    }
+
+    // Thông báo có id lớn hơn afterId (cũ nhất trước), dùng để gửi lại cho kết nối SSE vừa nối lại
+    public List<NotificationDTO> getNotificationsAfter(String userId, long afterId, int limit) {
+        List<NotificationDTO> notifications = new ArrayList<>();
+        String sql = "SELECT TOP (?) notification_id, user_id, message, created_at, is_read FROM notifications "
+                + "WHERE user_id = ? AND notification_id > ? ORDER BY notification_id";
         try (Connection conn = DBUtils.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, userId);
+            ps.setInt(1, limit);
+            ps.setString(2, userId);
+            ps.setLong(3, afterId);
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    NotificationDTO notification = new NotificationDTO(
+                    notifications.add(new NotificationDTO(
                         rs.getInt("notification_id"),
                         rs.getString("user_id"),
                         rs.getString("message"),
                         rs.getTimestamp("created_at"),
                         rs.getBoolean("is_read")
-                    );
-                    notifications.add(notification);
+                    ));
                 }
             }
         } catch (ClassNotFoundException | SQLException ex) {
@@ -52,31 +277,173 @@ public class NotificationDAO {
         return notifications;
     }
 
-    // Đánh dấu thông báo là đã đọc
-    public boolean markAsRead(int notificationId) {
-        String sql = "UPDATE notifications SET is_read = 1 WHERE notification_id = ?";
+    // Đánh dấu một thông báo của userId là đã đọc; bộ đếm chỉ giảm khi thông báo trước đó chưa đọc
+    public boolean markAsRead(String userId, int notificationId) {
+        String sql = "UPDATE notifications SET is_read = 1 OUTPUT deleted.is_read WHERE notification_id = ? AND user_id = ?";
         try (Connection conn = DBUtils.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, notificationId);
-            return ps.executeUpdate() > 0;
+            ps.setString(2, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                if (!rs.getBoolean("is_read")) {
+                    NotificationHub.getInstance().unreadChanged(userId, UnreadCounter.getInstance().add(userId, -1));
+                }
+                return true;
+            }
         } catch (ClassNotFoundException | SQLException ex) {
             Logger.getLogger(NotificationDAO.class.getName()).log(Level.SEVERE, null, ex);
         }
         return false;
     }
-    public int getUnreadCount(String userId) {
-        String sql = "SELECT COUNT(*) FROM notifications WHERE user_id = ? AND is_read = 0";
+
+    /**
+     * Đánh dấu đã đọc mọi thông báo chưa đọc của userId có id không lớn hơn
+     * upToId (thông báo mới nhất người dùng đã thấy, để thông báo vừa tới mà
+     * chưa hiện không bị đánh dấu theo). Cập nhật theo lô MARK_READ_CHUNK dòng,
+     * mỗi lô tự commit, để SQL Server không leo thang khóa lên cả bảng.
+     *
+     * @return số thông báo đã đánh dấu, -1 nếu lỗi
+     */
+    public int markAllAsRead(String userId, int upToId) {
+        String sql = "UPDATE TOP (?) notifications SET is_read = 1 WHERE user_id = ? AND is_read = 0 AND notification_id <= ?";
+        int total = 0;
+        boolean failed = false;
         try (Connection conn = DBUtils.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, userId);
+            int updated;
+            do {
+                ps.setInt(1, MARK_READ_CHUNK);
+                ps.setString(2, userId);
+                ps.setInt(3, upToId);
+                updated = ps.executeUpdate();
+                total += updated;
+            } while (updated == MARK_READ_CHUNK);
+        } catch (ClassNotFoundException | SQLException ex) {
+            Logger.getLogger(NotificationDAO.class.getName()).log(Level.SEVERE, null, ex);
+            failed = true;
+        }
+        // Các lô đã commit vẫn được tính khi lỗi giữa chừng
+        if (total > 0) {
+            NotificationHub.getInstance().unreadChanged(userId, UnreadCounter.getInstance().add(userId, -total));
+        }
+        return failed ? -1 : total;
+    }
+
+    /**
+     * Xóa tối đa limit thông báo đã đọc tạo trước retentionDays ngày (theo
+     * đồng hồ máy chủ CSDL). Thông báo chưa đọc không bao giờ bị xóa nên bộ
+     * đếm chưa đọc không đổi.
+     *
+     * @return số dòng đã xóa; bằng limit nghĩa là có thể còn
+     */
+    public int deleteReadOlderThan(int retentionDays, int limit) throws ClassNotFoundException, SQLException {
+        String sql = "DELETE TOP (?) FROM notifications WHERE is_read = 1 AND created_at < DATEADD(DAY, -?, GETDATE())";
+        try (Connection conn = DBUtils.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, limit);
+            ps.setInt(2, retentionDays);
+            return ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Người dùng có user_id lớn hơn afterUserId, có nhiều hơn maxPerUser thông
+     * báo và có thông báo đã đọc (tối đa limit người, theo thứ tự user_id).
+     * Người gọi duyệt theo keyset trên user_id nên người dùng chỉ có thông báo
+     * đã đọc trong phần được giữ không chặn những người phía sau.
+     */
+    public List<String> getUsersOverCap(String afterUserId, int maxPerUser, int limit) throws ClassNotFoundException, SQLException {
+        String sql = "SELECT TOP (?) user_id FROM notifications WHERE user_id > ? GROUP BY user_id "
+                + "HAVING COUNT(*) > ? AND SUM(CASE WHEN is_read = 1 THEN 1 ELSE 0 END) > 0 ORDER BY user_id";
+        List<String> users = new ArrayList<>();
+        try (Connection conn = DBUtils.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, limit);
+            ps.setString(2, afterUserId);
+            ps.setInt(3, maxPerUser);
             try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt(1);
+                while (rs.next()) {
+                    users.add(rs.getString(1));
                 }
             }
+        }
+        return users;
+    }
+
+    /**
+     * Xóa tối đa limit thông báo đã đọc của userId nằm ngoài maxPerUser thông
+     * báo mới nhất. Mốc là dòng thứ maxPerUser + 1 theo (created_at,
+     * notification_id), tìm bằng chỉ mục IX_notifications_user_created.
+     *
+     * @return số dòng đã xóa; bằng limit nghĩa là có thể còn
+     */
+    public int trimUserHistory(String userId, int maxPerUser, int limit) throws ClassNotFoundException, SQLException {
+        String sql = "SET NOCOUNT ON; "
+                + "DECLARE @created datetime, @id int; "
+                + "SELECT @created = created_at, @id = notification_id FROM notifications WHERE user_id = ? "
+                + "ORDER BY created_at DESC, notification_id DESC OFFSET ? ROWS FETCH NEXT 1 ROWS ONLY; "
+                + "DELETE TOP (?) FROM notifications WHERE user_id = ? AND is_read = 1 "
+                + "AND (created_at < @created OR (created_at = @created AND notification_id <= @id)); "
+                + "SELECT @@ROWCOUNT;";
+        try (Connection conn = DBUtils.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, userId);
+            ps.setInt(2, maxPerUser);
+            ps.setInt(3, limit);
+            ps.setString(4, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    // Đếm trực tiếp từ DB; trang web nên đọc UnreadCounter thay vì gọi hàm này
+    public int getUnreadCount(String userId) {
+        try {
+            return countUnread(userId);
         } catch (ClassNotFoundException | SQLException ex) {
             Logger.getLogger(NotificationDAO.class.getName()).log(Level.SEVERE, "Error counting unread notifications", ex);
         }
         return 0;
     }
-}   
\ No newline at end of file
+
+    int countUnread(String userId) throws ClassNotFoundException, SQLException {
+        String sql = "SELECT COUNT(*) FROM notifications WHERE user_id = ? AND is_read = 0";
+        try (Connection conn = DBUtils.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    // Đếm cho nhiều người dùng trong một truy vấn; người dùng không có thông báo chưa đọc không có trong kết quả
+    Map<String, Integer> countUnread(Collection<String> userIds) throws ClassNotFoundException, SQLException {
+        Map<String, Integer> counts = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return counts;
+        }
+        StringBuilder sql = new StringBuilder("SELECT user_id, COUNT(*) FROM notifications WHERE is_read = 0 AND user_id IN (");
+        for (int i = 0; i < userIds.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") GROUP BY user_id");
+        try (Connection conn = DBUtils.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            int i = 1;
+            for (String userId : userIds) {
+                ps.setString(i++, userId);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    counts.put(rs.getString(1), rs.getInt(2));
+                }
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,161 @@
+package dao;
+
+import dto.PaymentEventDTO;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import utils.DBUtils;
+
+/**
+ * Bảng payment_events: mỗi kết quả thanh toán MoMo được ghi một lần (khóa
+ * duy nhất order_id + trans_id) rồi PaymentEventProcessor xử lý ở nền.
+ * MoMo gửi lại IPN hay người dùng tải lại trang kết quả đều không tạo thêm
+ * dòng mới. Thời gian trong bảng dùng UTC (SYSUTCDATETIME).
+ */
+public class PaymentEventDAO {
+
+    private static final Logger LOGGER = Logger.getLogger(PaymentEventDAO.class.getName());
+
+    public static final String STATUS_RECEIVED = "Received";
+    public static final String STATUS_PROCESSING = "Processing";
+    public static final String STATUS_PROCESSED = "Processed";
+    public static final String STATUS_IGNORED = "Ignored";
+    public static final String STATUS_FAILED = "Failed";
+
+    private static final int MAX_NOTE_LENGTH = 1000;
+    private static final int SQL_UNIQUE_VIOLATION = 2627;
+    private static final int SQL_UNIQUE_INDEX_VIOLATION = 2601;
+
+    /**
+     * Ghi một sự kiện thanh toán mới.
+     *
+     * @return false nếu sự kiện (cùng orderId và transId) đã được ghi trước đó
+     */
+    public boolean record(PaymentEventDTO event) throws ClassNotFoundException, SQLException {
+        String sql = "INSERT INTO payment_events (order_id, trans_id, booking_id, result_code, amount, payload) VALUES (?, ?, ?, ?, ?, ?)";
+        try (Connection conn = DBUtils.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
+            ps.setString(1, event.getOrderId());
+            ps.setLong(2, event.getTransId());
+            if (event.getBookingId() != null) {
+                ps.setInt(3, event.getBookingId());
+            } else {
+                ps.setNull(3, Types.INTEGER);
+            }
+            ps.setInt(4, event.getResultCode());
+            ps.setLong(5, event.getAmount());
+            ps.setString(6, event.getPayload());
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                if (keys.next()) {
+                    event.setId(keys.getLong(1));
+                }
+            }
+            return true;
+        } catch (SQLException e) {
+            if (e.getErrorCode() == SQL_UNIQUE_VIOLATION || e.getErrorCode() == SQL_UNIQUE_INDEX_VIOLATION) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Nhận tối đa limit sự kiện chưa xử lý và giữ chúng trong leaseSeconds giây,
+     * giống email_outbox: READPAST để nhiều node không tranh nhau, lease hết hạn
+     * thì sự kiện được lấy lại.
+     */
+    public List<PaymentEventDTO> claimDue(int limit, int leaseSeconds) throws ClassNotFoundException, SQLException {
+        String sql = "UPDATE TOP (?) payment_events WITH (ROWLOCK, READPAST) "
+                + "SET status = ?, attempts = attempts + 1, locked_until = DATEADD(SECOND, ?, SYSUTCDATETIME()) "
+                + "OUTPUT inserted.id, inserted.order_id, inserted.trans_id, inserted.booking_id, inserted.result_code, "
+                + "inserted.amount, inserted.payload, inserted.attempts "
+                + "WHERE (status = ? AND next_attempt_at <= SYSUTCDATETIME()) "
+                + "OR (status = ? AND locked_until < SYSUTCDATETIME())";
+        List<PaymentEventDTO> claimed = new ArrayList<>();
+        try (Connection conn = DBUtils.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, limit);
+            ps.setString(2, STATUS_PROCESSING);
+            ps.setInt(3, leaseSeconds);
+            ps.setString(4, STATUS_RECEIVED);
+            ps.setString(5, STATUS_PROCESSING);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int value = rs.getInt("booking_id");
+                    Integer bookingId = rs.wasNull() ? null : value;
+                    claimed.add(new PaymentEventDTO(rs.getLong("id"), rs.getString("order_id"), rs.getLong("trans_id"),
+                            bookingId, rs.getInt("result_code"), rs.getLong("amount"),
+                            rs.getString("payload"), rs.getInt("attempts")));
+                }
+            }
+        }
+        return claimed;
+    }
+
+    // Kết thúc sự kiện bằng kết nối (và transaction) của người gọi
+    void finish(Connection conn, long id, String status, String note) throws SQLException {
+        String sql = "UPDATE payment_events SET status = ?, processed_at = SYSUTCDATETIME(), locked_until = NULL, last_error = ? WHERE id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, status);
+            ps.setString(2, truncate(note));
+            ps.setLong(3, id);
+            ps.executeUpdate();
+        }
+    }
+
+    // Kết thúc sự kiện không làm thay đổi đặt phòng (thanh toán thất bại, đặt phòng đã đổi trạng thái...)
+    public void finish(long id, String status, String note) {
+        try (Connection conn = DBUtils.getConnection()) {
+            finish(conn, id, status, note);
+        } catch (ClassNotFoundException | SQLException ex) {
+            LOGGER.log(Level.SEVERE, "Error finishing payment event " + id, ex);
+        }
+    }
+
+    // Trả sự kiện về hàng đợi, xử lý lại sau delaySeconds giây
+    public void markRetry(long id, int delaySeconds, String error) {
+        String sql = "UPDATE payment_events SET status = ?, next_attempt_at = DATEADD(SECOND, ?, SYSUTCDATETIME()), "
+                + "locked_until = NULL, last_error = ? WHERE id = ?";
+        try (Connection conn = DBUtils.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, STATUS_RECEIVED);
+            ps.setInt(2, Math.max(0, delaySeconds));
+            ps.setString(3, truncate(error));
+            ps.setLong(4, id);
+            ps.executeUpdate();
+        } catch (ClassNotFoundException | SQLException ex) {
+            LOGGER.log(Level.SEVERE, "Error rescheduling payment event " + id, ex);
+        }
+    }
+
+    public Map<String, Integer> countByStatus() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        String sql = "SELECT status, COUNT(*) AS total FROM payment_events GROUP BY status";
+        try (Connection conn = DBUtils.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql);
+                ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                counts.put(rs.getString("status"), rs.getInt("total"));
+            }
+        } catch (ClassNotFoundException | SQLException ex) {
+            LOGGER.log(Level.SEVERE, "Error counting payment events", ex);
+        }
+        return counts;
+    }
+
+    private String truncate(String note) {
+        if (note == null || note.length() <= MAX_NOTE_LENGTH) {
+            return note;
+        }
+        return note.substring(0, MAX_NOTE_LENGTH);
+    }
+}
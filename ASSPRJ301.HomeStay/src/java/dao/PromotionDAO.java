@@ -39,15 +39,14 @@ public class PromotionDAO {
         return null;
     }
 
-    public void incrementUsageCount(String promoCode) throws ClassNotFoundException {
-        String query = "UPDATE Promotion SET usage_count = usage_count + 1 WHERE code = ?";
-        try (Connection conn = DBUtils.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+    // Tính một lượt dùng mã giảm giá bằng kết nối (và transaction) của người gọi.
+    // Chỉ tăng khi mã còn hiệu lực và chưa hết lượt, nên hai đặt phòng cùng lúc không vượt usage_limit
+    boolean consume(Connection conn, String promoCode) throws SQLException {
+        String query = "UPDATE Promotion SET usage_count = ISNULL(usage_count, 0) + 1 "
+                + "WHERE code = ? AND start_date <= GETDATE() AND end_date >= GETDATE() AND ISNULL(usage_count, 0) < usage_limit";
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setString(1, promoCode);
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            throw new RuntimeException("Lỗi khi cập nhật usage_count: " + e.getMessage(), e);
+            return stmt.executeUpdate() > 0;
         }
     }
     public boolean createPromotion(PromotionDTO promotion) throws ClassNotFoundException {
@@ -11,15 +11,36 @@ import utils.DBUtils;
 
 public class ReviewDAO {
 
+    // Thêm đánh giá và cập nhật rating_sum/review_count của phòng trong cùng một transaction
     public boolean create(ReviewDTO review) throws SQLException, ClassNotFoundException {
         String sql = "INSERT INTO reviews (room_id, user_id, rating, comment) VALUES (?, ?, ?, ?)";
-        try (Connection conn = DBUtils.getConnection();
-                PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, review.getRoomId());
-            ps.setString(2, review.getUserId());
-            ps.setFloat(3, review.getRating());
-            ps.setString(4, review.getComment());
-            return ps.executeUpdate() > 0;
+        String sqlStats = "UPDATE rooms SET rating_sum = rating_sum + ?, review_count = review_count + 1 WHERE id = ?";
+        try (Connection conn = DBUtils.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql);
+                    PreparedStatement psStats = conn.prepareStatement(sqlStats)) {
+                ps.setInt(1, review.getRoomId());
+                ps.setString(2, review.getUserId());
+                ps.setFloat(3, review.getRating());
+                ps.setString(4, review.getComment());
+                if (ps.executeUpdate() == 0) {
+                    conn.rollback();
+                    return false;
+                }
+
+                psStats.setFloat(1, review.getRating());
+                psStats.setInt(2, review.getRoomId());
+                psStats.executeUpdate();
+
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } finally {
+            // Điểm đánh giá của phòng đã thay đổi
+            RoomCatalogCache.getInstance().invalidate(review.getRoomId());
         }
     }
 
@@ -0,0 +1,169 @@
+package dao;
+
+import dto.RoomDTO;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache đọc-xuyên (read-through) cho danh mục phòng, đặt trước
+ * RoomDAO.getRoomById, getRoomByName và getAllRooms.
+ *
+ * Phòng chỉ thay đổi khi admin thêm/sửa/xóa hoặc khi có đánh giá mới, nên các
+ * thao tác ghi trong RoomDAO và ReviewDAO gọi invalidate. Cache giới hạn số
+ * phòng theo LRU và luôn trả về bản sao để controller có thể sửa DTO mà không
+ * làm bẩn dữ liệu đã cache.
+ */
+public final class RoomCatalogCache {
+
+    private static final int MAX_ROOMS = Integer.getInteger("homestay.roomCache.maxRooms", 1000);
+    private static final RoomCatalogCache INSTANCE = new RoomCatalogCache(MAX_ROOMS);
+
+    private final int maxRooms;
+    private final LinkedHashMap<Integer, RoomDTO> byId;
+    private final Map<String, Integer> idByName = new HashMap<>();
+    private List<RoomDTO> allRooms;
+
+    // Tăng mỗi lần invalidate; kết quả đọc từ DB chỉ được đưa vào cache nếu không có ghi xen giữa
+    private final AtomicLong generation = new AtomicLong();
+    // Phiên bản của từng phòng (generation tại lần invalidate gần nhất), dùng cho các cache dựng từ dữ liệu phòng
+    private final Map<Integer, Long> roomVersions = new ConcurrentHashMap<>();
+    private volatile long invalidateAllGeneration;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private RoomCatalogCache(int maxRooms) {
+        this.maxRooms = maxRooms;
+        this.byId = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public static RoomCatalogCache getInstance() {
+        return INSTANCE;
+    }
+
+    // Thay đổi mỗi khi có phòng bị thêm/sửa/xóa hoặc có đánh giá mới
+    public long currentGeneration() {
+        return generation.get();
+    }
+
+    // Thay đổi mỗi khi chính phòng này bị sửa/xóa hoặc có đánh giá mới
+    public long roomVersion(int roomId) {
+        Long version = roomVersions.get(roomId);
+        return Math.max(version != null ? version : 0L, invalidateAllGeneration);
+    }
+
+    synchronized RoomDTO getById(int roomId) {
+        RoomDTO room = byId.get(roomId);
+        record(room != null);
+        return room != null ? new RoomDTO(room) : null;
+    }
+
+    synchronized RoomDTO getByName(String name) {
+        Integer id = idByName.get(name);
+        RoomDTO room = id != null ? byId.get(id) : null;
+        record(room != null);
+        return room != null ? new RoomDTO(room) : null;
+    }
+
+    synchronized List<RoomDTO> getAll() {
+        record(allRooms != null);
+        return allRooms != null ? copyOf(allRooms) : null;
+    }
+
+    synchronized void put(RoomDTO room, long expectedGeneration) {
+        if (room == null || generation.get() != expectedGeneration) {
+            return;
+        }
+        store(new RoomDTO(room));
+    }
+
+    synchronized void putAll(List<RoomDTO> rooms, long expectedGeneration) {
+        if (generation.get() != expectedGeneration) {
+            return;
+        }
+        List<RoomDTO> snapshot = copyOf(rooms);
+        // Danh sách đầy đủ chỉ được giữ khi vừa với giới hạn kích thước
+        if (snapshot.size() <= maxRooms) {
+            allRooms = snapshot;
+        }
+        for (RoomDTO room : snapshot) {
+            store(room);
+        }
+    }
+
+    // Gọi sau khi một phòng bị thêm/sửa/xóa hoặc có đánh giá mới
+    public synchronized void invalidate(int roomId) {
+        roomVersions.put(roomId, generation.incrementAndGet());
+        invalidations.incrementAndGet();
+        RoomDTO removed = byId.remove(roomId);
+        if (removed != null) {
+            idByName.remove(removed.getName());
+        }
+        allRooms = null;
+    }
+
+    public synchronized void invalidateAll() {
+        invalidateAllGeneration = generation.incrementAndGet();
+        roomVersions.clear();
+        invalidations.incrementAndGet();
+        byId.clear();
+        idByName.clear();
+        allRooms = null;
+    }
+
+    public synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long h = hits.get();
+        long m = misses.get();
+        stats.put("size", byId.size());
+        stats.put("maxSize", maxRooms);
+        stats.put("allRoomsCached", allRooms != null);
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("hitRatio", h + m == 0 ? 0.0 : (double) h / (h + m));
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        return stats;
+    }
+
+    private void store(RoomDTO room) {
+        RoomDTO previous = byId.put(room.getId(), room);
+        if (previous != null && !previous.getName().equals(room.getName())) {
+            idByName.remove(previous.getName());
+        }
+        idByName.put(room.getName(), room.getId());
+
+        Iterator<Map.Entry<Integer, RoomDTO>> it = byId.entrySet().iterator();
+        while (byId.size() > maxRooms && it.hasNext()) {
+            RoomDTO eldest = it.next().getValue();
+            it.remove();
+            idByName.remove(eldest.getName());
+            evictions.incrementAndGet();
+            allRooms = null;
+        }
+    }
+
+    private void record(boolean hit) {
+        if (hit) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+    }
+
+    private static List<RoomDTO> copyOf(List<RoomDTO> rooms) {
+        List<RoomDTO> copy = new ArrayList<>(rooms.size());
+        for (RoomDTO room : rooms) {
+            copy.add(new RoomDTO(room));
+        }
+        return copy;
+    }
+}
@@ -1,32 +1,108 @@
 package dao;
 
 import dto.RoomDTO;
+import dto.RoomPageDTO;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import utils.DBUtils;
 
 public class RoomDAO {
 
-    private void setRatingAndReviewCount(RoomDTO room, Connection conn) throws SQLException {
-        String sqlRating = "SELECT AVG(rating) as avgRating, COUNT(*) as reviewCount FROM reviews WHERE room_id = ?";
-        try (PreparedStatement psRating = conn.prepareStatement(sqlRating)) {
-            psRating.setInt(1, room.getId());
-            try (ResultSet rsRating = psRating.executeQuery()) {
-                if (rsRating.next()) {
-                    room.setAverageRating(rsRating.getDouble("avgRating"));
-                    room.setReviewCount(rsRating.getInt("reviewCount"));
+    private static final int IN_LIST_CHUNK_SIZE = 1000;
+
+    // Điểm trung bình lấy từ rating_sum/review_count được cập nhật khi thêm đánh giá, không tính lại từ bảng reviews
+    static final String AVG_RATING_EXPR = "CASE WHEN review_count = 0 THEN 0 ELSE rating_sum / review_count END";
+
+    // Nạp ảnh chi tiết cho nhiều phòng cùng lúc (1 truy vấn IN-list thay vì 1 truy vấn mỗi phòng)
+    void loadRoomDetails(Map<Integer, RoomDTO> rooms, Connection conn) throws SQLException {
+        loadDetailImages(rooms, conn);
+    }
+
+    private void loadDetailImages(Map<Integer, RoomDTO> rooms, Connection conn) throws SQLException {
+        for (RoomDTO room : rooms.values()) {
+            room.setDetailImages(new ArrayList<>());
+        }
+        for (List<Integer> chunk : chunkIds(rooms)) {
+            String sql = "SELECT room_id, image_url FROM room_images WHERE room_id IN (" + placeholders(chunk.size()) + ") ORDER BY room_id, id";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                bindIds(ps, chunk);
+                try (ResultSet rs = ps.executeQuery()) {
+                    applyDetailImages(rs, rooms);
                 }
             }
         }
     }
 
+    // Khi đọc toàn bộ phòng thì không cần IN-list: quét một lần room_images
+    private void loadDetailsForAllRooms(Map<Integer, RoomDTO> rooms, Connection conn) throws SQLException {
+        String sqlImages = "SELECT room_id, image_url FROM room_images ORDER BY room_id, id";
+        try (PreparedStatement psImages = conn.prepareStatement(sqlImages);
+                ResultSet rsImages = psImages.executeQuery()) {
+            applyDetailImages(rsImages, rooms);
+        }
+    }
+
+    private void applyDetailImages(ResultSet rs, Map<Integer, RoomDTO> rooms) throws SQLException {
+        while (rs.next()) {
+            RoomDTO room = rooms.get(rs.getInt("room_id"));
+            if (room != null) {
+                room.addDetailImage(rs.getString("image_url"));
+            }
+        }
+    }
+
+    // SQL Server giới hạn 2100 tham số mỗi câu lệnh nên chia danh sách ID thành từng nhóm
+    private List<List<Integer>> chunkIds(Map<Integer, RoomDTO> rooms) {
+        List<List<Integer>> chunks = new ArrayList<>();
+        List<Integer> chunk = new ArrayList<>();
+        for (Integer id : rooms.keySet()) {
+            chunk.add(id);
+            if (chunk.size() == IN_LIST_CHUNK_SIZE) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
+    private void bindIds(PreparedStatement ps, List<Integer> ids) throws SQLException {
+        for (int i = 0; i < ids.size(); i++) {
+            ps.setInt(i + 1, ids.get(i));
+        }
+    }
+
     public RoomDTO getRoomById(int roomId) throws Exception {
+        RoomCatalogCache cache = RoomCatalogCache.getInstance();
+        RoomDTO cached = cache.getById(roomId);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = cache.currentGeneration();
+        RoomDTO room = loadRoomById(roomId);
+        cache.put(room, generation);
+        return room;
+    }
+
+    private RoomDTO loadRoomById(int roomId) throws Exception {
         RoomDTO room = null;
-        String sqlRoom = "SELECT id, name, description, price, amenities, image_url FROM rooms WHERE id = ?";
+        String sqlRoom = "SELECT id, name, description, price, amenities, image_url, review_count, "
+                + AVG_RATING_EXPR + " AS avgRating FROM rooms WHERE id = ?";
         String sqlImages = "SELECT image_url FROM room_images WHERE room_id = ?";
 
         try (Connection conn = DBUtils.getConnection();
@@ -48,8 +124,8 @@ public class RoomDAO {
                             rsRoom.getString("amenities"),
                             rsRoom.getString("image_url"),
                             null,
-                            0.0, // averageRating ban đầu
-                            0    // reviewCount ban đầu
+                            rsRoom.getDouble("avgRating"),
+                            rsRoom.getInt("review_count")
                     );
 
                     // Lấy danh sách hình ảnh chi tiết
@@ -61,9 +137,6 @@ public class RoomDAO {
                         }
                         room.setDetailImages(detailImages);
                     }
-
-                    // Tính averageRating và reviewCount
-                    setRatingAndReviewCount(room, conn);
                 }
             }
         } catch (Exception e) {
@@ -73,9 +146,22 @@ public class RoomDAO {
     }
 
     public RoomDTO getRoomByName(String roomName) throws Exception {
+        RoomCatalogCache cache = RoomCatalogCache.getInstance();
+        RoomDTO cached = cache.getByName(roomName);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = cache.currentGeneration();
+        RoomDTO room = loadRoomByName(roomName);
+        cache.put(room, generation);
+        return room;
+    }
+
+    private RoomDTO loadRoomByName(String roomName) throws Exception {
         RoomDTO room = null;
         // Không lấy cột ratings trong truy vấn
-        String sqlRoom = "SELECT id, name, description, price, amenities, image_url FROM rooms WHERE name = ?";
+        String sqlRoom = "SELECT id, name, description, price, amenities, image_url, review_count, "
+                + AVG_RATING_EXPR + " AS avgRating FROM rooms WHERE name = ?";
         String sqlImages = "SELECT image_url FROM room_images WHERE room_id = ?";
 
         try (Connection conn = DBUtils.getConnection();
@@ -97,8 +183,8 @@ public class RoomDAO {
                             rsRoom.getString("amenities"),
                             rsRoom.getString("image_url"),
                             null,
-                            0.0,
-                            0
+                            rsRoom.getDouble("avgRating"),
+                            rsRoom.getInt("review_count")
                     );
 
                     psImages.setInt(1, room.getId());
@@ -109,8 +195,6 @@ public class RoomDAO {
                         }
                         room.setDetailImages(detailImages);
                     }
-
-                    setRatingAndReviewCount(room, conn);
                 }
             }
         } catch (Exception e) {
@@ -120,14 +204,25 @@ public class RoomDAO {
     }
 
     public List<RoomDTO> getAllRooms() throws Exception {
-        List<RoomDTO> roomList = new ArrayList<>();
+        RoomCatalogCache cache = RoomCatalogCache.getInstance();
+        List<RoomDTO> cached = cache.getAll();
+        if (cached != null) {
+            return cached;
+        }
+        long generation = cache.currentGeneration();
+        List<RoomDTO> rooms = loadAllRooms();
+        cache.putAll(rooms, generation);
+        return rooms;
+    }
+
+    private List<RoomDTO> loadAllRooms() throws Exception {
         // Không lấy cột ratings trong truy vấn
-        String sqlRoom = "SELECT id, name, description, price, amenities, image_url FROM rooms";
-        String sqlImages = "SELECT image_url FROM room_images WHERE room_id = ?";
+        String sqlRoom = "SELECT id, name, description, price, amenities, image_url, review_count, "
+                + AVG_RATING_EXPR + " AS avgRating FROM rooms";
+        Map<Integer, RoomDTO> rooms = new LinkedHashMap<>();
 
         try (Connection conn = DBUtils.getConnection();
-                PreparedStatement psRoom = conn.prepareStatement(sqlRoom);
-                PreparedStatement psImages = conn.prepareStatement(sqlImages)) {
+                PreparedStatement psRoom = conn.prepareStatement(sqlRoom)) {
 
             if (conn == null) {
                 throw new Exception("Cannot establish database connection");
@@ -143,27 +238,19 @@ public class RoomDAO {
                             rsRoom.getString("amenities"),
                             rsRoom.getString("image_url"),
                             null,
-                            0.0,
-                            0
+                            rsRoom.getDouble("avgRating"),
+                            rsRoom.getInt("review_count")
                     );
-
-                    psImages.setInt(1, room.getId());
-                    try (ResultSet rsImages = psImages.executeQuery()) {
-                        List<String> detailImages = new ArrayList<>();
-                        while (rsImages.next()) {
-                            detailImages.add(rsImages.getString("image_url"));
-                        }
-                        room.setDetailImages(detailImages);
-                    }
-
-                    setRatingAndReviewCount(room, conn);
-                    roomList.add(room);
+                    rooms.put(room.getId(), room);
                 }
             }
+
+            // Ảnh chi tiết của tất cả phòng trong một truy vấn
+            loadDetailsForAllRooms(rooms, conn);
         } catch (Exception e) {
             throw new Exception("Error retrieving all rooms: " + e.getMessage(), e);
         }
-        return roomList;
+        return new ArrayList<>(rooms.values());
     }
 
     public boolean create(RoomDTO room) throws Exception {
@@ -211,6 +298,8 @@ public class RoomDAO {
             }
         } catch (Exception e) {
             throw new Exception("Error creating room: " + e.getMessage(), e);
+        } finally {
+            RoomCatalogCache.getInstance().invalidate(room.getId());
         }
     }
 
@@ -257,6 +346,8 @@ public class RoomDAO {
             }
         } catch (Exception e) {
             throw new Exception("Error updating room: " + e.getMessage(), e);
+        } finally {
+            RoomCatalogCache.getInstance().invalidate(room.getId());
         }
     }
 
@@ -281,54 +372,178 @@ public class RoomDAO {
             }
         } catch (Exception e) {
             throw new Exception("Error deleting room: " + e.getMessage(), e);
+        } finally {
+            RoomCatalogCache.getInstance().invalidate(roomId);
         }
     }
 
+    // Các kiểu sắp xếp cho trang tìm kiếm; luôn kèm id để thứ tự ổn định giữa các trang
+    private static final Map<String, String> FILTER_SORTS = new HashMap<>();
+
+    static {
+        FILTER_SORTS.put("price_asc", "price ASC, id ASC");
+        FILTER_SORTS.put("price_desc", "price DESC, id ASC");
+        FILTER_SORTS.put("rating", "avgRating DESC, review_count DESC, id ASC");
+        FILTER_SORTS.put("name", "name ASC, id ASC");
+    }
+    private static final String DEFAULT_FILTER_SORT = "id ASC";
+
+    private static final String FILTER_COLUMNS = "id, name, description, price, amenities, image_url, review_count, "
+            + AVG_RATING_EXPR + " AS avgRating";
+
     public List<RoomDTO> getFilteredRooms(String homestayName, double minPrice, double maxPrice, String amenities) {
         List<RoomDTO> rooms = new ArrayList<>();
-        // Không lấy cột ratings trong truy vấn
-        String sql = "SELECT id, name, description, price, amenities, image_url FROM rooms WHERE 1=1";
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT " + FILTER_COLUMNS + " FROM rooms r"
+                + filterWhere(homestayName, minPrice, maxPrice, amenities, null, null, params) + " ORDER BY " + DEFAULT_FILTER_SORT;
 
-        if (homestayName != null && !homestayName.isEmpty()) {
-            sql += " AND LOWER(name) LIKE ?";
+        try (Connection conn = DBUtils.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            bindParams(ps, params);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rooms.add(mapFilteredRoom(rs));
+                }
+            }
+        } catch (SQLException | ClassNotFoundException e) {
+            e.printStackTrace();
         }
-        sql += " AND price BETWEEN ? AND ?";
-        if (amenities != null && !amenities.isEmpty()) {
-            sql += " AND LOWER(amenities) LIKE ?";
+        return rooms;
+    }
+
+    // Lọc, sắp xếp và phân trang ngay trong SQL (OFFSET/FETCH). Tổng số phòng lấy cùng truy vấn qua COUNT(*) OVER();
+    // nếu có checkIn/checkOut thì chỉ lấy phòng còn trống tất cả các đêm trong [checkIn, checkOut).
+    // Trang vượt quá trang cuối được đưa về trang cuối. Lỗi DB được ném ra để trang lỗi không bị cache như "không có phòng"
+    public RoomPageDTO getFilteredRooms(String homestayName, double minPrice, double maxPrice, String amenities,
+            LocalDate checkIn, LocalDate checkOut, String sort, int page, int pageSize) throws ClassNotFoundException, SQLException {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
         }
+        int currentPage = Math.max(1, page);
+        String orderBy = FILTER_SORTS.getOrDefault(sort, DEFAULT_FILTER_SORT);
+
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT " + FILTER_COLUMNS + ", COUNT(*) OVER() AS total_count FROM rooms r"
+                + filterWhere(homestayName, minPrice, maxPrice, amenities, checkIn, checkOut, params)
+                + " ORDER BY " + orderBy + " OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
 
         try (Connection conn = DBUtils.getConnection();
                 PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            int index = 1;
-            if (homestayName != null && !homestayName.isEmpty()) {
-                ps.setString(index++, "%" + homestayName.toLowerCase() + "%");
-            }
-            ps.setDouble(index++, minPrice);
-            ps.setDouble(index++, maxPrice);
-            if (amenities != null && !amenities.isEmpty()) {
-                ps.setString(index++, "%" + amenities.toLowerCase() + "%");
+            while (true) {
+                List<RoomDTO> rooms = new ArrayList<>();
+                int totalCount = 0;
+                bindParams(ps, params);
+                ps.setInt(params.size() + 1, (currentPage - 1) * pageSize);
+                ps.setInt(params.size() + 2, pageSize);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        totalCount = rs.getInt("total_count");
+                        rooms.add(mapFilteredRoom(rs));
+                    }
+                }
+                if (!rooms.isEmpty() || currentPage == 1) {
+                    return new RoomPageDTO(rooms, totalCount, currentPage, pageSize);
+                }
+                // Trang rỗng: đếm lại để biết trang cuối rồi đọc trang đó
+                totalCount = countFilteredRooms(conn, homestayName, minPrice, maxPrice, amenities, checkIn, checkOut);
+                int lastPage = Math.max(1, (totalCount + pageSize - 1) / pageSize);
+                if (lastPage >= currentPage) {
+                    return new RoomPageDTO(rooms, totalCount, currentPage, pageSize);
+                }
+                currentPage = lastPage;
             }
+        }
+    }
 
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                RoomDTO room = new RoomDTO(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getString("description"),
-                        rs.getDouble("price"),
-                        rs.getString("amenities"),
-                        rs.getString("image_url"),
-                        new ArrayList<>(),
-                        0.0,
-                        0
-                );
-                setRatingAndReviewCount(room, conn);
-                rooms.add(room);
-            }
+    // Chỉ đếm số phòng khớp bộ lọc (dùng cho getTotal của trang tìm kiếm)
+    public int countFilteredRooms(String homestayName, double minPrice, double maxPrice, String amenities,
+            LocalDate checkIn, LocalDate checkOut) {
+        try (Connection conn = DBUtils.getConnection()) {
+            return countFilteredRooms(conn, homestayName, minPrice, maxPrice, amenities, checkIn, checkOut);
         } catch (SQLException | ClassNotFoundException e) {
             e.printStackTrace();
         }
-        return rooms;
+        return 0;
+    }
+
+    private int countFilteredRooms(Connection conn, String homestayName, double minPrice, double maxPrice, String amenities,
+            LocalDate checkIn, LocalDate checkOut) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT COUNT(*) FROM rooms r" + filterWhere(homestayName, minPrice, maxPrice, amenities, checkIn, checkOut, params);
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            bindParams(ps, params);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    // Dựng mệnh đề WHERE dùng chung cho truy vấn trang và truy vấn đếm; tham số được thêm vào params theo thứ tự
+    private String filterWhere(String homestayName, double minPrice, double maxPrice, String amenities,
+            LocalDate checkIn, LocalDate checkOut, List<Object> params) {
+        StringBuilder where = new StringBuilder(" WHERE 1=1");
+        if (homestayName != null && !homestayName.isEmpty()) {
+            where.append(" AND LOWER(name) LIKE ?");
+            params.add("%" + homestayName.toLowerCase() + "%");
+        }
+        where.append(" AND price BETWEEN ? AND ?");
+        params.add(minPrice);
+        params.add(maxPrice);
+        if (amenities != null && !amenities.isEmpty()) {
+            where.append(" AND LOWER(amenities) LIKE ?");
+            params.add("%" + amenities.toLowerCase() + "%");
+        }
+        // Phòng trống cả khoảng ngày: một điều kiện NOT EXISTS trên khóa chính của room_nights
+        if (checkIn != null && checkOut != null && checkOut.isAfter(checkIn)) {
+            where.append(" AND NOT EXISTS (SELECT 1 FROM room_nights n WHERE n.room_id = r.id AND n.night_date >= ? AND n.night_date < ?)");
+            params.add(java.sql.Date.valueOf(checkIn));
+            params.add(java.sql.Date.valueOf(checkOut));
+        }
+        return where.toString();
+    }
+
+    private void bindParams(PreparedStatement ps, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            ps.setObject(i + 1, params.get(i));
+        }
+    }
+
+    private RoomDTO mapFilteredRoom(ResultSet rs) throws SQLException {
+        return new RoomDTO(
+                rs.getInt("id"),
+                rs.getString("name"),
+                rs.getString("description"),
+                rs.getDouble("price"),
+                rs.getString("amenities"),
+                rs.getString("image_url"),
+                new ArrayList<>(),
+                rs.getDouble("avgRating"),
+                rs.getInt("review_count")
+        );
+    }
+
+    // Tính lại rating_sum/review_count từ bảng reviews (backfill hoặc sửa sai lệch), trả về số phòng được cập nhật
+    public int rebuildRatingStats() throws Exception {
+        String sql = "UPDATE r SET r.rating_sum = ISNULL(s.rating_sum, 0), r.review_count = ISNULL(s.review_count, 0) "
+                + "OUTPUT inserted.id "
+                + "FROM rooms r LEFT JOIN (SELECT room_id, SUM(rating) AS rating_sum, COUNT(*) AS review_count "
+                + "FROM reviews GROUP BY room_id) s ON s.room_id = r.id "
+                + "WHERE r.rating_sum <> ISNULL(s.rating_sum, 0) OR r.review_count <> ISNULL(s.review_count, 0)";
+        try (Connection conn = DBUtils.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            List<Integer> fixed = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    fixed.add(rs.getInt(1));
+                }
+            }
+            // Câu lệnh đã commit (autocommit): bỏ các phòng được sửa khỏi cache phòng, kéo theo thẻ/trang tìm kiếm
+            for (int roomId : fixed) {
+                RoomCatalogCache.getInstance().invalidate(roomId);
+            }
+            return fixed.size();
+        } catch (Exception e) {
+            throw new Exception("Error rebuilding room rating stats: " + e.getMessage(), e);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,71 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import utils.DBUtils;
+
+/**
+ * Bảng scheduler_leases: mỗi tác vụ nền chỉ chạy trên một node nhờ giữ lease
+ * có thời hạn. Node đang giữ lease gia hạn ở mỗi lần chạy; nếu node đó dừng,
+ * node khác lấy được lease khi lease_until qua đi. Thời gian dùng UTC.
+ */
+public class SchedulerLeaseDAO {
+
+    private static final Logger LOGGER = Logger.getLogger(SchedulerLeaseDAO.class.getName());
+
+    private static final int SQL_UNIQUE_VIOLATION = 2627;
+    private static final int SQL_UNIQUE_INDEX_VIOLATION = 2601;
+
+    /**
+     * Lấy hoặc gia hạn lease name cho owner trong leaseSeconds giây.
+     *
+     * @return false nếu node khác đang giữ lease còn hạn
+     */
+    public boolean tryAcquire(String name, String owner, int leaseSeconds) throws ClassNotFoundException, SQLException {
+        String update = "UPDATE scheduler_leases SET owner = ?, lease_until = DATEADD(SECOND, ?, SYSUTCDATETIME()) "
+                + "WHERE name = ? AND (owner = ? OR lease_until < SYSUTCDATETIME())";
+        String insert = "INSERT INTO scheduler_leases (name, owner, lease_until) "
+                + "SELECT ?, ?, DATEADD(SECOND, ?, SYSUTCDATETIME()) "
+                + "WHERE NOT EXISTS (SELECT 1 FROM scheduler_leases WITH (UPDLOCK, HOLDLOCK) WHERE name = ?)";
+        try (Connection conn = DBUtils.getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement(update)) {
+                ps.setString(1, owner);
+                ps.setInt(2, leaseSeconds);
+                ps.setString(3, name);
+                ps.setString(4, owner);
+                if (ps.executeUpdate() > 0) {
+                    return true;
+                }
+            }
+            // Lần đầu tác vụ chạy: chưa có dòng nào cho name
+            try (PreparedStatement ps = conn.prepareStatement(insert)) {
+                ps.setString(1, name);
+                ps.setString(2, owner);
+                ps.setInt(3, leaseSeconds);
+                ps.setString(4, name);
+                return ps.executeUpdate() > 0;
+            } catch (SQLException e) {
+                if (e.getErrorCode() == SQL_UNIQUE_VIOLATION || e.getErrorCode() == SQL_UNIQUE_INDEX_VIOLATION) {
+                    return false;
+                }
+                throw e;
+            }
+        }
+    }
+
+    // Trả lease ngay (khi dừng ứng dụng) để node khác không phải chờ hết hạn
+    public void release(String name, String owner) {
+        String sql = "UPDATE scheduler_leases SET lease_until = SYSUTCDATETIME() WHERE name = ? AND owner = ?";
+        try (Connection conn = DBUtils.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, name);
+            ps.setString(2, owner);
+            ps.executeUpdate();
+        } catch (ClassNotFoundException | SQLException e) {
+            LOGGER.log(Level.WARNING, "Error releasing scheduler lease " + name, e);
+        }
+    }
+}
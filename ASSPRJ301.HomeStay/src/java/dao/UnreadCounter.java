@@ -0,0 +1,205 @@
+package dao;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Số thông báo chưa đọc của từng người dùng, giữ trong bộ nhớ để header.jsp
+ * không phải COUNT(*) bảng notifications ở mỗi lần tải trang.
+ *
+ * - Nạp từ DB ở lần đọc đầu tiên (hoặc khi mục đã cũ hơn maxAgeSeconds), sau
+ *   đó được NotificationDAO tăng/giảm sau khi thông báo được commit hay đánh
+ *   dấu đã đọc.
+ * - Giới hạn maxUsers mục, bỏ người dùng ít dùng nhất (LRU).
+ * - reconcile() (chạy định kỳ từ AppContextListener) đếm lại từ DB cho các
+ *   người dùng đang có trong cache và sửa sai lệch, ví dụ do thông báo được
+ *   tạo trên node khác.
+ */
+public final class UnreadCounter {
+
+    private static final Logger LOGGER = Logger.getLogger(UnreadCounter.class.getName());
+
+    private static final int MAX_USERS = Integer.getInteger("homestay.unread.maxUsers", 10000);
+    private static final long MAX_AGE_MS = TimeUnit.SECONDS.toMillis(Long.getLong("homestay.unread.maxAgeSeconds", 300L));
+    private static final int RECONCILE_CHUNK = 500;
+
+    private static final UnreadCounter INSTANCE = new UnreadCounter();
+
+    private final Map<String, Count> counts = new LinkedHashMap<String, Count>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Count> eldest) {
+            return size() > MAX_USERS;
+        }
+    };
+    private final NotificationDAO notificationDAO = new NotificationDAO();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong corrected = new AtomicLong();
+
+    private UnreadCounter() {
+    }
+
+    public static UnreadCounter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Số thông báo chưa đọc của userId. Chỉ truy vấn DB khi người dùng chưa có
+     * trong cache hoặc mục đã cũ; lỗi DB trả về 0 và không được cache.
+     */
+    public int get(String userId) {
+        if (userId == null) {
+            return 0;
+        }
+        Count e;
+        synchronized (counts) {
+            e = counts.get(userId);
+        }
+        if (e != null && System.currentTimeMillis() - e.loadedAt < MAX_AGE_MS) {
+            hits.incrementAndGet();
+            return e.get();
+        }
+        misses.incrementAndGet();
+        try {
+            long version = e != null ? e.version() : 0;
+            int count = notificationDAO.countUnread(userId);
+            if (e != null) {
+                // Có thay đổi mới hơn trong lúc đếm thì giữ giá trị đó
+                return e.reset(version, count) ? count : e.get();
+            }
+            synchronized (counts) {
+                counts.putIfAbsent(userId, new Count(count));
+            }
+            return count;
+        } catch (ClassNotFoundException | SQLException ex) {
+            LOGGER.log(Level.SEVERE, "Error loading unread count for " + userId, ex);
+            return e != null ? e.get() : 0;
+        }
+    }
+
+    // Gọi sau khi commit; người dùng chưa có trong cache sẽ được nạp lại khi đọc.
+    // Trả về số mới, -1 nếu người dùng không có trong cache
+    int add(String userId, int delta) {
+        Count e;
+        synchronized (counts) {
+            e = counts.get(userId);
+        }
+        return e != null ? e.add(delta) : -1;
+    }
+
+    // Số đang cache (không truy vấn DB), -1 nếu không có
+    int peek(String userId) {
+        Count e;
+        synchronized (counts) {
+            e = counts.get(userId);
+        }
+        return e != null ? e.get() : -1;
+    }
+
+    // Sau khi gửi thông báo cho tất cả người dùng
+    void addAll(int delta) {
+        List<Count> all;
+        synchronized (counts) {
+            all = new ArrayList<>(counts.values());
+        }
+        for (Count e : all) {
+            e.add(delta);
+        }
+    }
+
+    /**
+     * Đếm lại từ DB cho mọi người dùng đang được cache (theo lô), sửa các mục
+     * sai lệch. Mục có thay đổi trong lúc đếm được giữ nguyên và xét ở lần sau.
+     *
+     * @return số người dùng đã được sửa
+     */
+    public int reconcile() throws ClassNotFoundException, SQLException {
+        List<String> users;
+        synchronized (counts) {
+            users = new ArrayList<>(counts.keySet());
+        }
+        int drift = 0;
+        for (int from = 0; from < users.size(); from += RECONCILE_CHUNK) {
+            List<String> chunk = users.subList(from, Math.min(users.size(), from + RECONCILE_CHUNK));
+            Map<String, Long> versions = new LinkedHashMap<>();
+            synchronized (counts) {
+                for (String userId : chunk) {
+                    Count e = counts.get(userId);
+                    if (e != null) {
+                        versions.put(userId, e.version());
+                    }
+                }
+            }
+            Map<String, Integer> actual = notificationDAO.countUnread(versions.keySet());
+            for (Map.Entry<String, Long> v : versions.entrySet()) {
+                Count e;
+                synchronized (counts) {
+                    e = counts.get(v.getKey());
+                }
+                int count = actual.getOrDefault(v.getKey(), 0);
+                if (e != null && e.get() != count && e.reset(v.getValue(), count)) {
+                    drift++;
+                }
+            }
+        }
+        corrected.addAndGet(drift);
+        return drift;
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (counts) {
+            stats.put("users", counts.size());
+        }
+        stats.put("maxUsers", MAX_USERS);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("corrected", corrected.get());
+        return stats;
+    }
+
+    // Bộ đếm của một người dùng; version tăng ở mỗi thay đổi để reconcile không ghi đè một thay đổi mới hơn
+    private static final class Count {
+
+        private int count;
+        private long version;
+        private volatile long loadedAt;
+
+        Count(int count) {
+            this.count = count;
+            this.loadedAt = System.currentTimeMillis();
+        }
+
+        synchronized int get() {
+            return count;
+        }
+
+        synchronized long version() {
+            return version;
+        }
+
+        synchronized int add(int delta) {
+            count = Math.max(0, count + delta);
+            version++;
+            return count;
+        }
+
+        synchronized boolean reset(long expectedVersion, int value) {
+            if (version != expectedVersion) {
+                return false;
+            }
+            count = value;
+            version++;
+            loadedAt = System.currentTimeMillis();
+            return true;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package dao;
 
+import dto.EmailOutboxDTO;
 import dto.UserDTO;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -10,6 +11,7 @@ import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import utils.DBUtils;
+import utils.EmailDispatcher;
 import utils.PasswordUtils;
 
 public class UserDAO implements IDAO<UserDTO, String> {
@@ -44,25 +46,43 @@ public class UserDAO implements IDAO<UserDTO, String> {
 
     @Override
     public boolean create(UserDTO user) {
+        return create(user, null);
+    }
+
+    // Tạo người dùng; email (nếu có, ví dụ email xác thực) được ghi vào email_outbox trong cùng transaction
+    public boolean create(UserDTO user, EmailOutboxDTO email) {
         boolean success = false;
         String sql = "INSERT INTO tblUsers (userID, fullName, roleID, password, gmail, sdt, avatar_url, token, isVerified) "
                 + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
-        try (Connection conn = DBUtils.getConnection();
-                PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, user.getUserID());
-            ps.setString(2, user.getFullName());
-            ps.setString(3, user.getRoleID());
-            ps.setString(4, PasswordUtils.hashPassword(user.getPassword()));
-            ps.setString(5, user.getGmail());
-            ps.setString(6, user.getSdt());
-            ps.setString(7, user.getAvatarUrl());
-            ps.setString(8, user.getToken());
-            ps.setBoolean(9, user.isIsVerified());
+        try (Connection conn = DBUtils.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, user.getUserID());
+                ps.setString(2, user.getFullName());
+                ps.setString(3, user.getRoleID());
+                ps.setString(4, PasswordUtils.hashPassword(user.getPassword()));
+                ps.setString(5, user.getGmail());
+                ps.setString(6, user.getSdt());
+                ps.setString(7, user.getAvatarUrl());
+                ps.setString(8, user.getToken());
+                ps.setBoolean(9, user.isIsVerified());
 
-            success = ps.executeUpdate() > 0;
+                success = ps.executeUpdate() > 0;
+                if (success && email != null) {
+                    new EmailOutboxDAO().enqueue(conn, email);
+                }
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
         } catch (ClassNotFoundException | SQLException ex) {
             Logger.getLogger(UserDAO.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
+        }
+        if (success && email != null) {
+            EmailDispatcher.getInstance().nudge();
         }
         return success;
     }
@@ -242,16 +262,35 @@ public class UserDAO implements IDAO<UserDTO, String> {
 
     // Lưu token đặt lại mật khẩu
     public boolean saveResetPasswordToken(String userId, String token) {
+        return saveResetPasswordToken(userId, token, null);
+    }
+
+    // Lưu token đặt lại mật khẩu; email đặt lại mật khẩu (nếu có) được ghi vào email_outbox trong cùng transaction
+    public boolean saveResetPasswordToken(String userId, String token, EmailOutboxDTO email) {
         String sql = "UPDATE tblUsers SET token = ? WHERE userID = ?";
-        try (Connection conn = DBUtils.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, token);
-            ps.setString(2, userId);
-            return ps.executeUpdate() > 0;
+        boolean saved;
+        try (Connection conn = DBUtils.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, token);
+                ps.setString(2, userId);
+                saved = ps.executeUpdate() > 0;
+                if (saved && email != null) {
+                    new EmailOutboxDAO().enqueue(conn, email);
+                }
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
         } catch (ClassNotFoundException | SQLException ex) {
             Logger.getLogger(UserDAO.class.getName()).log(Level.SEVERE, "Error saving reset password token", ex);
+            return false;
         }
-        return false;
+        if (saved && email != null) {
+            EmailDispatcher.getInstance().nudge();
+        }
+        return saved;
     }
 
     // Xác thực token đặt lại mật khẩu
@@ -0,0 +1,99 @@
+package dto;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+
+// Kết quả một lần chuyển trạng thái đặt phòng (BookingDAO.transition): chỉ các cột cần cho email/thông báo,
+// kèm email và thông báo mà người gọi muốn ghi trong cùng transaction
+public class BookingTransitionDTO {
+    private int bookingId;
+    private String userId;
+    private String fullName;
+    private String gmail;
+    private int roomId;
+    private String roomName;
+    private Date checkInDate;
+    private Date checkOutDate;
+    private double totalPrice;
+    private String fromStatus;
+    private String toStatus;
+
+    private EmailOutboxDTO email;
+    private final List<NotificationDTO> notifications = new ArrayList<>();
+
+    public BookingTransitionDTO(int bookingId, String userId, String fullName, String gmail, int roomId, String roomName,
+            Date checkInDate, Date checkOutDate, double totalPrice, String fromStatus, String toStatus) {
+        this.bookingId = bookingId;
+        this.userId = userId;
+        this.fullName = fullName;
+        this.gmail = gmail;
+        this.roomId = roomId;
+        this.roomName = roomName;
+        this.checkInDate = checkInDate;
+        this.checkOutDate = checkOutDate;
+        this.totalPrice = totalPrice;
+        this.fromStatus = fromStatus;
+        this.toStatus = toStatus;
+    }
+
+    public int getBookingId() {
+        return bookingId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getFullName() {
+        return fullName;
+    }
+
+    public String getGmail() {
+        return gmail;
+    }
+
+    public int getRoomId() {
+        return roomId;
+    }
+
+    public String getRoomName() {
+        return roomName;
+    }
+
+    public Date getCheckInDate() {
+        return checkInDate;
+    }
+
+    public Date getCheckOutDate() {
+        return checkOutDate;
+    }
+
+    public double getTotalPrice() {
+        return totalPrice;
+    }
+
+    public String getFromStatus() {
+        return fromStatus;
+    }
+
+    public String getToStatus() {
+        return toStatus;
+    }
+
+    public EmailOutboxDTO getEmail() {
+        return email;
+    }
+
+    public void setEmail(EmailOutboxDTO email) {
+        this.email = email;
+    }
+
+    public List<NotificationDTO> getNotifications() {
+        return notifications;
+    }
+
+    public void addNotification(String userId, String message) {
+        notifications.add(new NotificationDTO(0, userId, message, null, false));
+    }
+}
@@ -0,0 +1,79 @@
+package dto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Một email chờ gửi trong bảng email_outbox; nội dung được dựng lại từ emailType + params khi gửi
+public class EmailOutboxDTO {
+    private long id;
+    private String toEmail;
+    private String emailType;
+    private Map<String, String> params;
+    private int attempts;
+
+    public EmailOutboxDTO() {
+        this.params = new LinkedHashMap<>();
+    }
+
+    public EmailOutboxDTO(String toEmail, String emailType) {
+        this(0, toEmail, emailType, null, 0);
+    }
+
+    public EmailOutboxDTO(long id, String toEmail, String emailType, Map<String, String> params, int attempts) {
+        this.id = id;
+        this.toEmail = toEmail;
+        this.emailType = emailType;
+        this.params = (params != null) ? params : new LinkedHashMap<>();
+        this.attempts = attempts;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getToEmail() {
+        return toEmail;
+    }
+
+    public void setToEmail(String toEmail) {
+        this.toEmail = toEmail;
+    }
+
+    public String getEmailType() {
+        return emailType;
+    }
+
+    public void setEmailType(String emailType) {
+        this.emailType = emailType;
+    }
+
+    public Map<String, String> getParams() {
+        return params;
+    }
+
+    public void setParams(Map<String, String> params) {
+        this.params = params;
+    }
+
+    public String getParam(String key) {
+        return params.get(key);
+    }
+
+    // Cho phép viết liền: new EmailOutboxDTO(to, type).with("fullName", name)
+    public EmailOutboxDTO with(String key, String value) {
+        params.put(key, value);
+        return this;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+}
@@ -0,0 +1,100 @@
+package dto;
+
+// Một kết quả thanh toán MoMo (IPN hoặc URL chuyển hướng) trong bảng payment_events, khóa duy nhất theo orderId + transId
+public class PaymentEventDTO {
+    private long id;
+    private String orderId;
+    private long transId;
+    private Integer bookingId;
+    private int resultCode;
+    private long amount;
+    private String payload;
+    private int attempts;
+
+    public PaymentEventDTO() {
+    }
+
+    public PaymentEventDTO(String orderId, long transId, Integer bookingId, int resultCode, long amount, String payload) {
+        this(0, orderId, transId, bookingId, resultCode, amount, payload, 0);
+    }
+
+    public PaymentEventDTO(long id, String orderId, long transId, Integer bookingId, int resultCode, long amount,
+            String payload, int attempts) {
+        this.id = id;
+        this.orderId = orderId;
+        this.transId = transId;
+        this.bookingId = bookingId;
+        this.resultCode = resultCode;
+        this.amount = amount;
+        this.payload = payload;
+        this.attempts = attempts;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(String orderId) {
+        this.orderId = orderId;
+    }
+
+    public long getTransId() {
+        return transId;
+    }
+
+    public void setTransId(long transId) {
+        this.transId = transId;
+    }
+
+    public Integer getBookingId() {
+        return bookingId;
+    }
+
+    public void setBookingId(Integer bookingId) {
+        this.bookingId = bookingId;
+    }
+
+    public int getResultCode() {
+        return resultCode;
+    }
+
+    public void setResultCode(int resultCode) {
+        this.resultCode = resultCode;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public void setAmount(long amount) {
+        this.amount = amount;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public boolean isSuccess() {
+        return resultCode == 0;
+    }
+}
@@ -30,6 +30,12 @@ public class RoomDTO {
         this.reviewCount = reviewCount;
     }
 
+    // Sao chép (kể cả danh sách ảnh) để bản cache không bị sửa qua tham chiếu
+    public RoomDTO(RoomDTO other) {
+        this(other.id, other.name, other.description, other.price, other.amenities, other.imageUrl,
+                new ArrayList<>(other.detailImages), other.averageRating, other.reviewCount);
+    }
+
     public int getId() {
         return id;
     }
@@ -0,0 +1,39 @@
+package dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Một trang kết quả lọc phòng kèm tổng số phòng khớp bộ lọc
+public class RoomPageDTO {
+    private List<RoomDTO> rooms;
+    private int totalCount;
+    private int page;
+    private int pageSize;
+
+    public RoomPageDTO(List<RoomDTO> rooms, int totalCount, int page, int pageSize) {
+        this.rooms = (rooms != null) ? rooms : new ArrayList<>();
+        this.totalCount = totalCount;
+        this.page = page;
+        this.pageSize = pageSize;
+    }
+
+    public List<RoomDTO> getRooms() {
+        return rooms;
+    }
+
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getTotalPages() {
+        return pageSize <= 0 ? 0 : (totalCount + pageSize - 1) / pageSize;
+    }
+}
@@ -0,0 +1,146 @@
+package listener;
+
+import dao.AvailabilityIndex;
+import dao.RoomDAO;
+import dao.UnreadCounter;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+import payment.PaymentEventProcessor;
+import payment.UnpaidBookingSweeper;
+import payment.sim.MoMoSimulator;
+import utils.DBUtils;
+import utils.EmailDispatcher;
+import utils.EmailUtils;
+import utils.NotificationRetention;
+
+@WebListener
+public class AppContextListener implements ServletContextListener {
+
+    private static final Logger LOGGER = Logger.getLogger(AppContextListener.class.getName());
+    private static final long RATING_REPAIR_INTERVAL_MINUTES = 24 * 60;
+    private static final long AVAILABILITY_RECONCILE_MINUTES = Long.getLong("homestay.availability.reconcileMinutes", 5L);
+    private static final long UNREAD_RECONCILE_MINUTES = Long.getLong("homestay.unread.reconcileMinutes", 10L);
+
+    private ScheduledExecutorService scheduler;
+    private MoMoSimulator moMoSimulator;
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        // Khởi tạo pool kết nối sớm để request đầu tiên không phải chờ
+        try {
+            LOGGER.log(Level.INFO, "Database pool started: {0}", DBUtils.getPoolStatistics());
+        } catch (ClassNotFoundException e) {
+            LOGGER.log(Level.SEVERE, "JDBC driver not found", e);
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "homestay-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        // Đồng bộ lại rating_sum/review_count khi khởi động và định kỳ mỗi ngày
+        scheduler.scheduleWithFixedDelay(this::repairRatingStats, 1, RATING_REPAIR_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        // Nạp chỉ mục phòng trống ngay khi khởi động, sau đó đối chiếu lại với bảng bookings định kỳ
+        scheduler.scheduleWithFixedDelay(this::reconcileAvailability, 0, AVAILABILITY_RECONCILE_MINUTES, TimeUnit.MINUTES);
+        // Đối chiếu bộ đếm thông báo chưa đọc với DB
+        scheduler.scheduleWithFixedDelay(this::reconcileUnreadCounts, UNREAD_RECONCILE_MINUTES, UNREAD_RECONCILE_MINUTES, TimeUnit.MINUTES);
+        // Hủy đặt phòng chưa thanh toán quá hạn (chỉ chạy trên node giữ lease)
+        scheduler.scheduleWithFixedDelay(this::expireUnpaidBookings, 1, UnpaidBookingSweeper.SWEEP_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        // Xóa thông báo đã đọc quá hạn và cắt lịch sử quá dài (chỉ chạy trên node giữ lease)
+        scheduler.scheduleWithFixedDelay(this::purgeNotifications, 5, NotificationRetention.PURGE_INTERVAL_MINUTES, TimeUnit.MINUTES);
+
+        // Gửi email từ email_outbox ở nền
+        try {
+            EmailUtils.preloadTemplates();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Email templates failed to compile", e);
+        }
+        EmailDispatcher.getInstance().start();
+
+        // Áp dụng kết quả thanh toán MoMo (payment_events) ở nền
+        PaymentEventProcessor.getInstance().start();
+
+        // MoMo giả lập cho môi trường dev/kiểm thử tải (tắt mặc định)
+        if (Boolean.getBoolean("homestay.momosim.enabled")) {
+            try {
+                moMoSimulator = new MoMoSimulator(new MoMoSimulator.Options());
+                moMoSimulator.start();
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "MoMo simulator failed to start", e);
+                moMoSimulator = null;
+            }
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (moMoSimulator != null) {
+            moMoSimulator.stop();
+        }
+        UnpaidBookingSweeper.getInstance().release();
+        NotificationRetention.getInstance().release();
+        PaymentEventProcessor.getInstance().stop();
+        EmailDispatcher.getInstance().stop();
+        EmailUtils.shutdown();
+        DBUtils.shutdown();
+    }
+
+    private void repairRatingStats() {
+        try {
+            int fixed = new RoomDAO().rebuildRatingStats();
+            if (fixed > 0) {
+                LOGGER.log(Level.WARNING, "Repaired rating stats for {0} room(s)", fixed);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Rating stats repair failed", e);
+        }
+    }
+
+    private void reconcileAvailability() {
+        try {
+            int drift = AvailabilityIndex.getInstance().reconcile();
+            if (drift > 0) {
+                LOGGER.log(Level.WARNING, "Availability index corrected {0} drifted booking(s)", drift);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Availability index reconciliation failed", e);
+        }
+    }
+
+    private void reconcileUnreadCounts() {
+        try {
+            int drift = UnreadCounter.getInstance().reconcile();
+            if (drift > 0) {
+                LOGGER.log(Level.INFO, "Unread notification counter corrected for {0} user(s)", drift);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Unread notification counter reconciliation failed", e);
+        }
+    }
+
+    private void expireUnpaidBookings() {
+        try {
+            UnpaidBookingSweeper.getInstance().sweep();
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Unpaid booking expiry failed", e);
+        }
+    }
+
+    private void purgeNotifications() {
+        try {
+            NotificationRetention.getInstance().purge();
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Notification retention failed", e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package payment;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram độ trễ với các ngưỡng cố định (ms), ghi không khóa.
+ * Phân vị được ước lượng bằng ngưỡng trên của bucket chứa nó.
+ */
+final class LatencyHistogram {
+
+    private static final long[] BOUNDS_MS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    // Bucket cuối cùng chứa các giá trị lớn hơn ngưỡng lớn nhất
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS_MS.length + 1);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos) {
+        long millis = nanos / 1_000_000L;
+        int i = 0;
+        while (i < BOUNDS_MS.length && millis > BOUNDS_MS[i]) {
+            i++;
+        }
+        counts.incrementAndGet(i);
+        total.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    // Ngưỡng trên (ms) của bucket chứa phân vị p (0 < p <= 1); -1 nếu chưa có dữ liệu
+    long percentile(double p) {
+        long n = total.get();
+        if (n == 0) {
+            return -1;
+        }
+        long rank = (long) Math.ceil(p * n);
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return i < BOUNDS_MS.length ? BOUNDS_MS[i] : maxNanos.get() / 1_000_000L;
+            }
+        }
+        return maxNanos.get() / 1_000_000L;
+    }
+
+    Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long n = total.get();
+        stats.put("count", n);
+        stats.put("avgMillis", n == 0 ? 0.0 : totalNanos.get() / 1_000_000.0 / n);
+        stats.put("maxMillis", maxNanos.get() / 1_000_000.0);
+        stats.put("p50Millis", percentile(0.50));
+        stats.put("p90Millis", percentile(0.90));
+        stats.put("p99Millis", percentile(0.99));
+        Map<String, Long> buckets = new LinkedHashMap<>();
+        for (int i = 0; i < BOUNDS_MS.length; i++) {
+            buckets.put("le" + BOUNDS_MS[i] + "ms", counts.get(i));
+        }
+        buckets.put("gt" + BOUNDS_MS[BOUNDS_MS.length - 1] + "ms", counts.get(BOUNDS_MS.length));
+        stats.put("buckets", buckets);
+        return stats;
+    }
+}
@@ -0,0 +1,71 @@
+package payment;
+
+// Callback từ MoMo (IPN - Instant Payment Notification)
+public class MoMoCallback {
+
+    private String partnerCode;
+    private String orderId;
+    private String requestId;
+    private long amount;
+    private String orderInfo;
+    private String orderType;
+    private long transId;
+    private int resultCode;
+    private String message;
+    private String payType;
+    private long responseTime;
+    private String extraData;
+    private String signature;
+
+    public String getPartnerCode() {
+        return partnerCode;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public String getOrderInfo() {
+        return orderInfo;
+    }
+
+    public String getOrderType() {
+        return orderType;
+    }
+
+    public long getTransId() {
+        return transId;
+    }
+
+    public int getResultCode() {
+        return resultCode;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String getPayType() {
+        return payType;
+    }
+
+    public long getResponseTime() {
+        return responseTime;
+    }
+
+    public String getExtraData() {
+        return extraData;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+}
@@ -0,0 +1,20 @@
+package payment;
+
+/**
+ * Thông tin tài khoản MoMo và các URL callback. Mặc định là tài khoản test;
+ * có thể ghi đè bằng -Dhomestay.momo.* khi triển khai.
+ */
+public final class MoMoConfig {
+
+    public static final String PARTNER_CODE = System.getProperty("homestay.momo.partnerCode", "MOMOBKUN20180529");
+    public static final String ACCESS_KEY = System.getProperty("homestay.momo.accessKey", "klm05TvNBzhg7h7j");
+    public static final String SECRET_KEY = System.getProperty("homestay.momo.secretKey", "at67qH6mk8w5Y1nAyMoYKMWACiEi2bsa");
+    public static final String REDIRECT_URL = System.getProperty("homestay.momo.redirectUrl",
+            "http://localhost:8080/ASSPRJ301_F-Final_Last/paymentResult");
+    public static final String IPN_URL = System.getProperty("homestay.momo.ipnUrl",
+            "http://localhost:8080/ASSPRJ301_F-Final_Last/ipn");
+    public static final String REQUEST_TYPE = "captureWallet";
+
+    private MoMoConfig() {
+    }
+}
@@ -0,0 +1,233 @@
+package payment;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Client gọi API tạo thanh toán của MoMo.
+ *
+ * - Kết nối keep-alive: body phản hồi (kể cả khi lỗi) luôn được đọc hết và
+ *   đóng stream chứ không disconnect(), nên JDK giữ socket/phiên TLS trong
+ *   cache keep-alive và dùng lại cho yêu cầu sau (số kết nối rảnh tối đa mỗi
+ *   host do -Dhttp.maxConnections quyết định).
+ * - Timeout kết nối và đọc chặt để MoMo chậm không giữ hết thread của Tomcat.
+ * - Bulkhead giới hạn số yêu cầu đồng thời, circuit breaker từ chối ngay khi
+ *   MoMo lỗi liên tiếp.
+ * - Thống kê độ trễ dạng histogram cho trang /admin/system.
+ *
+ * Địa chỉ API đọc từ -Dhomestay.momo.endpoint, có thể trỏ sang một MoMo giả
+ * lập chạy local để kiểm thử tải.
+ */
+public final class MoMoGatewayClient {
+
+    private static final Logger LOGGER = Logger.getLogger(MoMoGatewayClient.class.getName());
+
+    private static final String DEFAULT_ENDPOINT = "https://test-payment.momo.vn/v2/gateway/api/create";
+    private static final int CONNECT_TIMEOUT_MS = Integer.getInteger("homestay.momo.connectTimeoutMillis", 3000);
+    private static final int READ_TIMEOUT_MS = Integer.getInteger("homestay.momo.readTimeoutMillis", 10000);
+    private static final int MAX_CONCURRENT = Integer.getInteger("homestay.momo.maxConcurrent", 20);
+    private static final long BULKHEAD_WAIT_MS = Long.getLong("homestay.momo.bulkheadWaitMillis", 200L);
+    private static final int BREAKER_FAILURES = Integer.getInteger("homestay.momo.breakerFailures", 5);
+    private static final long BREAKER_OPEN_MS = Long.getLong("homestay.momo.breakerOpenMillis", 30000L);
+    private static final int MAX_ERROR_BODY = 2048;
+
+    // Gson và adapter được tạo một lần, không tra cứu lại theo kiểu ở mỗi yêu cầu
+    private static final Gson GSON = new Gson();
+    private static final TypeAdapter<MoMoRequest> REQUEST_ADAPTER = GSON.getAdapter(MoMoRequest.class);
+    private static final TypeAdapter<MoMoResponse> RESPONSE_ADAPTER = GSON.getAdapter(MoMoResponse.class);
+
+    private static final MoMoGatewayClient INSTANCE = new MoMoGatewayClient(
+            System.getProperty("homestay.momo.endpoint", DEFAULT_ENDPOINT));
+
+    private final URL endpoint;
+    private final Semaphore bulkhead = new Semaphore(MAX_CONCURRENT);
+    private final CircuitBreaker breaker = new CircuitBreaker(BREAKER_FAILURES, BREAKER_OPEN_MS);
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong successes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong bulkheadRejected = new AtomicLong();
+
+    private MoMoGatewayClient(String endpoint) {
+        try {
+            this.endpoint = new URL(endpoint);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Invalid MoMo endpoint: " + endpoint, e);
+        }
+        LOGGER.log(Level.INFO, "MoMo gateway endpoint: {0}", endpoint);
+    }
+
+    public static MoMoGatewayClient getInstance() {
+        return INSTANCE;
+    }
+
+    public String getEndpoint() {
+        return endpoint.toString();
+    }
+
+    // Gửi yêu cầu tạo thanh toán, trả về phản hồi có payUrl
+    public MoMoResponse createPayment(MoMoRequest request) throws PaymentGatewayException {
+        if (!breaker.tryAcquire()) {
+            throw new PaymentGatewayException("MoMo circuit breaker is open", true);
+        }
+        try {
+            if (!bulkhead.tryAcquire(BULKHEAD_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                breaker.onIgnored();
+                bulkheadRejected.incrementAndGet();
+                throw new PaymentGatewayException("Too many concurrent MoMo requests", true);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            breaker.onIgnored();
+            throw new PaymentGatewayException("Interrupted while waiting for MoMo", true);
+        }
+
+        calls.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            MoMoResponse response = post(request);
+            breaker.onSuccess();
+            successes.incrementAndGet();
+            return response;
+        } catch (HttpStatusException e) {
+            // 4xx: MoMo vẫn hoạt động, lỗi nằm ở yêu cầu nên không tính vào circuit breaker
+            if (e.status >= 500) {
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+            }
+            failures.incrementAndGet();
+            throw new PaymentGatewayException(e.getMessage(), e);
+        } catch (SocketTimeoutException e) {
+            breaker.onFailure();
+            failures.incrementAndGet();
+            timeouts.incrementAndGet();
+            throw new PaymentGatewayException("MoMo request timed out", e);
+        } catch (IOException | JsonParseException e) {
+            breaker.onFailure();
+            failures.incrementAndGet();
+            throw new PaymentGatewayException("MoMo request failed: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            // Mọi lỗi khác cũng phải báo cho breaker, nếu không lượt thử half-open bị kẹt mãi
+            breaker.onFailure();
+            failures.incrementAndGet();
+            throw new PaymentGatewayException("MoMo request failed: " + e, e);
+        } finally {
+            latency.record(System.nanoTime() - start);
+            bulkhead.release();
+        }
+    }
+
+    private MoMoResponse post(MoMoRequest request) throws IOException {
+        byte[] body = REQUEST_ADAPTER.toJson(request).getBytes(StandardCharsets.UTF_8);
+        HttpURLConnection conn = (HttpURLConnection) endpoint.openConnection();
+        boolean reusable = false;
+        try {
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            conn.setReadTimeout(READ_TIMEOUT_MS);
+            conn.setRequestMethod("POST");
+            conn.setUseCaches(false);
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+            conn.setRequestProperty("Accept", "application/json");
+            conn.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(body);
+            }
+
+            int status = conn.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                String error = readError(conn);
+                reusable = true;
+                throw new HttpStatusException(status, "MoMo returned error " + status + ": " + error);
+            }
+
+            MoMoResponse response;
+            try (InputStream in = conn.getInputStream()) {
+                response = RESPONSE_ADAPTER.fromJson(new InputStreamReader(in, StandardCharsets.UTF_8));
+                drain(in);
+            }
+            reusable = true;
+            if (response == null) {
+                throw new IOException("Empty response from MoMo");
+            }
+            return response;
+        } finally {
+            // Chỉ đóng hẳn socket khi kết nối ở trạng thái không xác định
+            if (!reusable) {
+                conn.disconnect();
+            }
+        }
+    }
+
+    // Đọc tối đa MAX_ERROR_BODY byte để ghi log, phần còn lại đọc bỏ để giữ kết nối
+    private String readError(HttpURLConnection conn) throws IOException {
+        try (InputStream in = conn.getErrorStream()) {
+            if (in == null) {
+                return "";
+            }
+            byte[] buffer = new byte[MAX_ERROR_BODY];
+            int length = 0;
+            int n;
+            while (length < buffer.length && (n = in.read(buffer, length, buffer.length - length)) != -1) {
+                length += n;
+            }
+            drain(in);
+            return new String(buffer, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    private void drain(InputStream in) throws IOException {
+        byte[] skip = new byte[512];
+        while (in.read(skip) != -1) {
+            // bỏ qua
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("endpoint", endpoint.toString());
+        stats.put("connectTimeoutMillis", CONNECT_TIMEOUT_MS);
+        stats.put("readTimeoutMillis", READ_TIMEOUT_MS);
+        stats.put("maxConcurrent", MAX_CONCURRENT);
+        stats.put("inFlight", MAX_CONCURRENT - bulkhead.availablePermits());
+        stats.put("calls", calls.get());
+        stats.put("successes", successes.get());
+        stats.put("failures", failures.get());
+        stats.put("timeouts", timeouts.get());
+        stats.put("bulkheadRejected", bulkheadRejected.get());
+        stats.put("circuitBreaker", breaker.getStatistics());
+        stats.put("latency", latency.getStatistics());
+        return stats;
+    }
+
+    // Phản hồi HTTP khác 200 từ MoMo
+    private static final class HttpStatusException extends IOException {
+
+        final int status;
+
+        HttpStatusException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package payment;
+
+// Yêu cầu tạo thanh toán gửi đến MoMo (API /v2/gateway/api/create)
+public class MoMoRequest {
+
+    public String partnerCode;
+    public String orderId;
+    public String requestId;
+    public long amount;
+    public String orderInfo;
+    public String redirectUrl;
+    public String ipnUrl;
+    public String requestType;
+    public String extraData;
+    public String signature;
+
+    public MoMoRequest(String partnerCode, String orderId, String requestId, long amount, String orderInfo,
+            String redirectUrl, String ipnUrl, String requestType, String extraData, String signature) {
+        this.partnerCode = partnerCode;
+        this.orderId = orderId;
+        this.requestId = requestId;
+        this.amount = amount;
+        this.orderInfo = orderInfo;
+        this.redirectUrl = redirectUrl;
+        this.ipnUrl = ipnUrl;
+        this.requestType = requestType;
+        this.extraData = extraData;
+        this.signature = signature;
+    }
+}
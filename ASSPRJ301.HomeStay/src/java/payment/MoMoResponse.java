@@ -0,0 +1,31 @@
+package payment;
+
+// Phản hồi của MoMo cho yêu cầu tạo thanh toán
+public class MoMoResponse {
+
+    private String orderId;
+    private String requestId;
+    private int resultCode;
+    private String message;
+    private String payUrl;
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public int getResultCode() {
+        return resultCode;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String getPayUrl() {
+        return payUrl;
+    }
+}
@@ -0,0 +1,185 @@
+package payment;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Chữ ký HmacSHA256 theo quy định của MoMo: chuỗi rawData gồm các cặp
+ * key=value nối bằng '&' (không mã hóa URL), ký bằng secret key và đổi ra hex.
+ *
+ * Mỗi thread giữ sẵn một Mac đã init với secret key, một bộ đệm cho rawData
+ * và các mảng byte/char cho kết quả, nên ký và kiểm tra chữ ký không tạo
+ * Mac/SecretKeySpec mới và không cấp phát thêm (ngoài chuỗi hex trả về khi
+ * ký). So sánh chữ ký dùng thời gian hằng để không lộ thông tin qua thời gian
+ * phản hồi.
+ *
+ * Bộ đệm của thread lớn lên theo dữ liệu ký lớn nhất nhưng được trả về kích
+ * thước mặc định sau mỗi lần ký vượt MAX_RETAINED_CHARS, nên một callback có
+ * extraData rất lớn không giữ bộ nhớ mãi trên thread xử lý request.
+ *
+ * SIGNER giữ đối tượng của webapp trên các thread của Tomcat và không thể xóa
+ * từ contextDestroyed (ThreadLocal chỉ xóa được trên chính thread đó). Khi
+ * redeploy, Tomcat có thể cảnh báo rò rỉ ThreadLocal; ThreadLocalLeakPreventionListener
+ * (bật mặc định trong server.xml) làm mới các thread của pool sau khi context
+ * dừng nên các đối tượng này được giải phóng.
+ */
+public final class MoMoSignature {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int DIGEST_LENGTH = 32;
+    private static final int DEFAULT_RAW_CHARS = 512;
+    private static final int MAX_RETAINED_CHARS = 4096;
+
+    private static final SecretKeySpec KEY = new SecretKeySpec(MoMoConfig.SECRET_KEY.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    private static final ThreadLocal<Signer> SIGNER = ThreadLocal.withInitial(Signer::new);
+
+    private MoMoSignature() {
+    }
+
+    // Chữ ký cho yêu cầu tạo thanh toán
+    public static String signRequest(MoMoRequest r) throws IOException {
+        Signer s = SIGNER.get();
+        s.requestRawData(r);
+        return new String(s.sign(), 0, DIGEST_LENGTH * 2);
+    }
+
+    // Chữ ký MoMo gửi kèm IPN và URL chuyển hướng sau thanh toán
+    public static String signCallback(MoMoCallback c) throws IOException {
+        Signer s = SIGNER.get();
+        s.callbackRawData(c);
+        return new String(s.sign(), 0, DIGEST_LENGTH * 2);
+    }
+
+    public static boolean verifyCallback(MoMoCallback c) throws IOException {
+        if (c == null || c.getSignature() == null) {
+            return false;
+        }
+        Signer s = SIGNER.get();
+        s.callbackRawData(c);
+        return constantTimeEquals(s.sign(), c.getSignature());
+    }
+
+    // So sánh toàn bộ chuỗi, không dừng ở ký tự khác đầu tiên
+    static boolean constantTimeEquals(char[] expectedHex, String actual) {
+        int length = DIGEST_LENGTH * 2;
+        int diff = actual.length() ^ length;
+        for (int i = 0; i < length; i++) {
+            char a = i < actual.length() ? actual.charAt(i) : 0;
+            diff |= a ^ expectedHex[i];
+        }
+        return diff == 0;
+    }
+
+    // Trạng thái dùng lại của một thread
+    private static final class Signer {
+
+        private final Mac mac;
+        private StringBuilder raw = new StringBuilder(DEFAULT_RAW_CHARS);
+        private byte[] bytes = new byte[DEFAULT_RAW_CHARS * 3];
+        private final byte[] digest = new byte[DIGEST_LENGTH];
+        private final char[] hex = new char[DIGEST_LENGTH * 2];
+
+        Signer() {
+            try {
+                mac = Mac.getInstance(ALGORITHM);
+                mac.init(KEY);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Cannot initialise " + ALGORITHM, e);
+            }
+        }
+
+        void requestRawData(MoMoRequest r) {
+            raw.setLength(0);
+            raw.append("accessKey=").append(MoMoConfig.ACCESS_KEY)
+                    .append("&amount=").append(r.amount)
+                    .append("&extraData=").append(r.extraData)
+                    .append("&ipnUrl=").append(r.ipnUrl)
+                    .append("&orderId=").append(r.orderId)
+                    .append("&orderInfo=").append(r.orderInfo)
+                    .append("&partnerCode=").append(r.partnerCode)
+                    .append("&redirectUrl=").append(r.redirectUrl)
+                    .append("&requestId=").append(r.requestId)
+                    .append("&requestType=").append(r.requestType);
+        }
+
+        void callbackRawData(MoMoCallback c) {
+            raw.setLength(0);
+            raw.append("partnerCode=").append(c.getPartnerCode())
+                    .append("&orderId=").append(c.getOrderId())
+                    .append("&requestId=").append(c.getRequestId())
+                    .append("&amount=").append(c.getAmount())
+                    .append("&orderInfo=").append(c.getOrderInfo())
+                    .append("&orderType=").append(c.getOrderType())
+                    .append("&transId=").append(c.getTransId())
+                    .append("&resultCode=").append(c.getResultCode())
+                    .append("&message=").append(c.getMessage())
+                    .append("&payType=").append(c.getPayType())
+                    .append("&responseTime=").append(c.getResponseTime())
+                    .append("&extraData=").append(c.getExtraData());
+        }
+
+        // Ký rawData hiện tại, trả về mảng hex dùng chung của thread (chỉ hợp lệ tới lần ký sau)
+        char[] sign() throws IOException {
+            int length = encodeUtf8();
+            try {
+                mac.update(bytes, 0, length);
+                mac.doFinal(digest, 0);
+            } catch (ShortBufferException e) {
+                throw new IOException("Error generating signature", e);
+            }
+            for (int i = 0; i < DIGEST_LENGTH; i++) {
+                int b = digest[i] & 0xff;
+                hex[i * 2] = HEX[b >>> 4];
+                hex[i * 2 + 1] = HEX[b & 0x0f];
+            }
+            shrink();
+            return hex;
+        }
+
+        // Không giữ bộ đệm đã phình to vì một dữ liệu ký lớn bất thường
+        private void shrink() {
+            if (raw.capacity() > MAX_RETAINED_CHARS) {
+                raw = new StringBuilder(DEFAULT_RAW_CHARS);
+            }
+            if (bytes.length > MAX_RETAINED_CHARS * 3) {
+                bytes = new byte[DEFAULT_RAW_CHARS * 3];
+            }
+        }
+
+        // Mã hóa UTF-8 rawData vào bộ đệm byte; surrogate lẻ thành '?' giống String.getBytes
+        private int encodeUtf8() {
+            int n = raw.length();
+            if (bytes.length < n * 3) {
+                bytes = new byte[n * 3];
+            }
+            int p = 0;
+            for (int i = 0; i < n; i++) {
+                char ch = raw.charAt(i);
+                if (ch < 0x80) {
+                    bytes[p++] = (byte) ch;
+                } else if (ch < 0x800) {
+                    bytes[p++] = (byte) (0xc0 | (ch >> 6));
+                    bytes[p++] = (byte) (0x80 | (ch & 0x3f));
+                } else if (Character.isHighSurrogate(ch) && i + 1 < n && Character.isLowSurrogate(raw.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(ch, raw.charAt(++i));
+                    bytes[p++] = (byte) (0xf0 | (cp >> 18));
+                    bytes[p++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    bytes[p++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    bytes[p++] = (byte) (0x80 | (cp & 0x3f));
+                } else if (Character.isSurrogate(ch)) {
+                    bytes[p++] = '?';
+                } else {
+                    bytes[p++] = (byte) (0xe0 | (ch >> 12));
+                    bytes[p++] = (byte) (0x80 | ((ch >> 6) & 0x3f));
+                    bytes[p++] = (byte) (0x80 | (ch & 0x3f));
+                }
+            }
+            return p;
+        }
+    }
+}
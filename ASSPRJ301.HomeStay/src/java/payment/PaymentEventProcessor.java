@@ -0,0 +1,231 @@
+package payment;
+
+import dao.BookingDAO;
+import dao.PaymentEventDAO;
+import dto.BookingDTO;
+import dto.EmailOutboxDTO;
+import dto.NotificationDTO;
+import dto.PaymentEventDTO;
+import dto.UserDTO;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import utils.EmailUtils;
+
+/**
+ * Xử lý ở nền các sự kiện thanh toán trong payment_events.
+ *
+ * IPN (và trang kết quả) chỉ ghi sự kiện rồi trả lời ngay; luồng này mới cập
+ * nhật đặt phòng sang Paid bằng compare-and-set và ghi email, thông báo cho
+ * người dùng và admin trong cùng transaction. Lỗi tạm thời được thử lại với
+ * backoff, quá số lần thử thì sự kiện chuyển sang Failed để admin kiểm tra.
+ */
+public final class PaymentEventProcessor {
+
+    private static final Logger LOGGER = Logger.getLogger(PaymentEventProcessor.class.getName());
+
+    private static final long POLL_INTERVAL_MS = Long.getLong("homestay.payment.pollMillis", 2000L);
+    private static final int BATCH_SIZE = Integer.getInteger("homestay.payment.batchSize", 20);
+    private static final int MAX_ATTEMPTS = Integer.getInteger("homestay.payment.maxAttempts", 10);
+    private static final int BASE_BACKOFF_SECONDS = 10;
+    private static final int MAX_BACKOFF_SECONDS = 900;
+    private static final int LEASE_SECONDS = 120;
+
+    private static final PaymentEventProcessor INSTANCE = new PaymentEventProcessor();
+
+    private final PaymentEventDAO eventDAO = new PaymentEventDAO();
+    private final BookingDAO bookingDAO = new BookingDAO();
+    private ScheduledExecutorService poller;
+
+    private final AtomicLong paidCount = new AtomicLong();
+    private final AtomicLong ignoredCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private PaymentEventProcessor() {
+    }
+
+    public static PaymentEventProcessor getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized void start() {
+        if (poller != null) {
+            return;
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "homestay-payment-events");
+            t.setDaemon(true);
+            return t;
+        });
+        poller.scheduleWithFixedDelay(this::poll, POLL_INTERVAL_MS, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        LOGGER.log(Level.INFO, "Payment event processor started");
+    }
+
+    // Sự kiện đang xử lý dở sẽ được lấy lại khi lease hết hạn
+    public synchronized void stop() {
+        if (poller == null) {
+            return;
+        }
+        poller.shutdown();
+        try {
+            if (!poller.awaitTermination(10, TimeUnit.SECONDS)) {
+                poller.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            poller.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        poller = null;
+    }
+
+    /**
+     * Ghi kết quả thanh toán (đã kiểm tra chữ ký) vào payment_events và báo
+     * cho luồng xử lý. payload là JSON gốc để tra cứu về sau.
+     *
+     * @return false nếu kết quả này đã được ghi trước đó
+     */
+    public boolean submit(MoMoCallback callback, String payload) throws ClassNotFoundException, SQLException {
+        PaymentEventDTO event = new PaymentEventDTO(callback.getOrderId(), callback.getTransId(),
+                parseBookingId(callback.getOrderId()), callback.getResultCode(), callback.getAmount(), payload);
+        boolean recorded = eventDAO.record(event);
+        if (recorded) {
+            nudge();
+        }
+        return recorded;
+    }
+
+    // orderId có dạng <bookingId>_<timestamp>
+    public static Integer parseBookingId(String orderId) {
+        if (orderId == null) {
+            return null;
+        }
+        int end = orderId.indexOf('_');
+        try {
+            return Integer.valueOf(end > 0 ? orderId.substring(0, end) : orderId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Gọi sau khi ghi một sự kiện mới để xử lý ngay thay vì chờ lần poll kế tiếp
+    public void nudge() {
+        ScheduledExecutorService p = poller;
+        if (p == null) {
+            return;
+        }
+        try {
+            p.execute(this::poll);
+        } catch (RejectedExecutionException e) {
+            // Đang dừng, bỏ qua
+        }
+    }
+
+    private void poll() {
+        try {
+            List<PaymentEventDTO> batch;
+            do {
+                batch = eventDAO.claimDue(BATCH_SIZE, LEASE_SECONDS);
+                for (PaymentEventDTO event : batch) {
+                    handle(event);
+                }
+            } while (batch.size() == BATCH_SIZE && !Thread.currentThread().isInterrupted());
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error polling payment events", e);
+        }
+    }
+
+    private void handle(PaymentEventDTO event) {
+        try {
+            process(event);
+        } catch (Exception e) {
+            if (event.getAttempts() >= MAX_ATTEMPTS) {
+                eventDAO.finish(event.getId(), PaymentEventDAO.STATUS_FAILED, e.toString());
+                failedCount.incrementAndGet();
+                LOGGER.log(Level.SEVERE, "Payment event " + event.getId() + " for order " + event.getOrderId() + " failed", e);
+            } else {
+                int delay = backoffSeconds(event.getAttempts());
+                eventDAO.markRetry(event.getId(), delay, e.toString());
+                retryCount.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Payment event {0} failed (attempt {1}), retrying in {2}s: {3}",
+                        new Object[]{event.getId(), event.getAttempts(), delay, e.getMessage()});
+            }
+        }
+    }
+
+    private void process(PaymentEventDTO event) throws Exception {
+        if (!event.isSuccess()) {
+            ignore(event, "resultCode=" + event.getResultCode());
+            return;
+        }
+
+        // Thanh toán thành công nhưng không áp dụng được: tiền đã bị trừ, cần báo để hoàn tiền
+        int bookingId = event.getBookingId() != null ? event.getBookingId() : 0;
+        BookingDTO booking = bookingId > 0 ? bookingDAO.getBookingById(bookingId) : null;
+        if (booking == null || !BookingDAO.STATUS_PENDING_PAYMENT.equals(booking.getStatus())) {
+            bookingDAO.rejectPayment(bookingId, event.getId(), event.getOrderId(), event.getAmount());
+            failedCount.incrementAndGet();
+            LOGGER.log(Level.WARNING, "Order {0} paid {1} VND for booking {2}, which is {3}; refund needed",
+                    new Object[]{event.getOrderId(), event.getAmount(), bookingId, booking == null ? "missing" : booking.getStatus()});
+            return;
+        }
+
+        String amount = String.valueOf(event.getAmount());
+        String formattedAmount = String.format("%,d", event.getAmount());
+        UserDTO user = booking.getUser();
+        String roomName = booking.getRoom() != null ? booking.getRoom().getName() : "Không xác định";
+
+        EmailOutboxDTO email = new EmailOutboxDTO(user.getGmail(), EmailUtils.TYPE_PAYMENT_SUCCESS)
+                .with("fullName", user.getFullName())
+                .with("bookingId", String.valueOf(bookingId))
+                .with("amount", amount)
+                .with("paymentDate", new java.util.Date().toString());
+
+        List<NotificationDTO> notifications = new ArrayList<>();
+        String message = "Thanh toán thành công cho đặt phòng '" + roomName + "' với số tiền " + formattedAmount + " VND.";
+        notifications.add(new NotificationDTO(0, user.getUserID(), message, null, false));
+        String adminMessage = "Người dùng " + user.getFullName() + " đã thanh toán thành công cho đặt phòng (ID: " + bookingId
+                + ") phòng '" + roomName + "' với số tiền " + formattedAmount + " VND. Vui lòng xác nhận.";
+
+        String result = bookingDAO.markPaid(bookingId, event.getId(), event.getOrderId(), event.getAmount(), email, notifications, adminMessage);
+        if (PaymentEventDAO.STATUS_PROCESSED.equals(result)) {
+            paidCount.incrementAndGet();
+            LOGGER.log(Level.INFO, "Booking {0} marked as paid by order {1}", new Object[]{bookingId, event.getOrderId()});
+        } else {
+            failedCount.incrementAndGet();
+            LOGGER.log(Level.WARNING, "Order {0} paid {1} VND for booking {2}, which could not be applied; refund needed",
+                    new Object[]{event.getOrderId(), event.getAmount(), bookingId});
+        }
+    }
+
+    private void ignore(PaymentEventDTO event, String reason) {
+        eventDAO.finish(event.getId(), PaymentEventDAO.STATUS_IGNORED, reason);
+        ignoredCount.incrementAndGet();
+    }
+
+    // 10s, 20s, 40s... tối đa 15 phút
+    private int backoffSeconds(int attempts) {
+        long delay = (long) BASE_BACKOFF_SECONDS << Math.min(20, Math.max(0, attempts - 1));
+        return (int) Math.min(MAX_BACKOFF_SECONDS, delay);
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("running", poller != null);
+        stats.put("paid", paidCount.get());
+        stats.put("ignored", ignoredCount.get());
+        stats.put("retried", retryCount.get());
+        stats.put("failed", failedCount.get());
+        stats.put("events", eventDAO.countByStatus());
+        return stats;
+    }
+}
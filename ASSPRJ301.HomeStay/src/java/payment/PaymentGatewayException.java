@@ -0,0 +1,27 @@
+package payment;
+
+import java.io.IOException;
+
+/**
+ * Lỗi khi gọi cổng thanh toán. unavailable = true nghĩa là yêu cầu bị từ chối
+ * ngay (circuit breaker đang mở hoặc đã đủ số yêu cầu đồng thời) mà chưa gửi
+ * đến MoMo, người dùng có thể thử lại sau.
+ */
+public class PaymentGatewayException extends IOException {
+
+    private final boolean unavailable;
+
+    public PaymentGatewayException(String message, boolean unavailable) {
+        super(message);
+        this.unavailable = unavailable;
+    }
+
+    public PaymentGatewayException(String message, Throwable cause) {
+        super(message, cause);
+        this.unavailable = false;
+    }
+
+    public boolean isUnavailable() {
+        return unavailable;
+    }
+}
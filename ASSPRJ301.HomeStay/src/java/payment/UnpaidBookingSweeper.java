@@ -0,0 +1,100 @@
+package payment;
+
+import dao.BookingDAO;
+import dao.SchedulerLeaseDAO;
+import java.lang.management.ManagementFactory;
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hủy các đặt phòng PendingPayment đã quá hạn thanh toán (khách bỏ dở ở
+ * MoMo), trả lại phòng và báo cho người đặt.
+ *
+ * AppContextListener gọi sweep() định kỳ trên mọi node; chỉ node giữ lease
+ * "unpaid-booking-expiry" trong scheduler_leases mới thực sự chạy. Thời hạn
+ * (homestay.booking.paymentTtlMinutes) nên dài hơn thời hạn của link thanh
+ * toán MoMo, nếu không khách có thể trả tiền cho đặt phòng vừa bị hủy (sự
+ * kiện thanh toán đó bị đánh dấu Failed, admin và người đặt được báo để hoàn
+ * tiền, xem BookingDAO.rejectPayment).
+ */
+public final class UnpaidBookingSweeper {
+
+    private static final Logger LOGGER = Logger.getLogger(UnpaidBookingSweeper.class.getName());
+
+    public static final long SWEEP_INTERVAL_MINUTES = Long.getLong("homestay.booking.expirySweepMinutes", 5L);
+    private static final long PAYMENT_TTL_MINUTES = Long.getLong("homestay.booking.paymentTtlMinutes", 120L);
+    private static final int BATCH_SIZE = Integer.getInteger("homestay.booking.expiryBatchSize", 200);
+    private static final String LEASE_NAME = "unpaid-booking-expiry";
+    // Giữ lease qua hai lần chạy để node đang chạy luôn gia hạn kịp
+    private static final int LEASE_SECONDS = (int) TimeUnit.MINUTES.toSeconds(SWEEP_INTERVAL_MINUTES * 2) + 60;
+
+    private static final UnpaidBookingSweeper INSTANCE = new UnpaidBookingSweeper();
+
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID().toString().substring(0, 8);
+    private final BookingDAO bookingDAO = new BookingDAO();
+    private final SchedulerLeaseDAO leaseDAO = new SchedulerLeaseDAO();
+
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong runCount = new AtomicLong();
+    private volatile boolean leaseHeld;
+    private volatile long lastRunMillis;
+
+    private UnpaidBookingSweeper() {
+    }
+
+    public static UnpaidBookingSweeper getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Hủy các đặt phòng quá hạn theo từng lô BATCH_SIZE cho tới khi hết.
+     *
+     * @return số đặt phòng đã hủy, 0 nếu node khác đang giữ lease
+     */
+    public synchronized int sweep() throws Exception {
+        leaseHeld = leaseDAO.tryAcquire(LEASE_NAME, owner, LEASE_SECONDS);
+        if (!leaseHeld) {
+            return 0;
+        }
+        int total = 0;
+        List<Integer> batch;
+        do {
+            batch = bookingDAO.expireUnpaid(PAYMENT_TTL_MINUTES, BATCH_SIZE);
+            total += batch.size();
+        } while (batch.size() == BATCH_SIZE && !Thread.currentThread().isInterrupted());
+
+        runCount.incrementAndGet();
+        lastRunMillis = System.currentTimeMillis();
+        if (total > 0) {
+            expiredCount.addAndGet(total);
+            LOGGER.log(Level.INFO, "Expired {0} unpaid booking(s) older than {1} minute(s)", new Object[]{total, PAYMENT_TTL_MINUTES});
+        }
+        return total;
+    }
+
+    // Gọi khi dừng ứng dụng
+    public void release() {
+        if (leaseHeld) {
+            leaseDAO.release(LEASE_NAME, owner);
+            leaseHeld = false;
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("owner", owner);
+        stats.put("leaseHeld", leaseHeld);
+        stats.put("paymentTtlMinutes", PAYMENT_TTL_MINUTES);
+        stats.put("runs", runCount.get());
+        stats.put("expired", expiredCount.get());
+        stats.put("lastRun", lastRunMillis > 0 ? new Timestamp(lastRunMillis).toString() : null);
+        return stats;
+    }
+}
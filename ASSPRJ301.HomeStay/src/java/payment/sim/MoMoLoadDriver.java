@@ -0,0 +1,342 @@
+package payment.sim;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import payment.PaymentEventProcessor;
+
+/**
+ * Công cụ kiểm thử tải đường thanh toán: gửi hàng nghìn yêu cầu /processPayment
+ * đồng thời tới ứng dụng, trong khi một MoMoSimulator nhúng đóng vai MoMo và
+ * gửi IPN về /ipn. Báo cáo thông lượng và độ trễ p50/p99 của /processPayment
+ * và độ trễ đầu-cuối (từ lúc gửi yêu cầu tới khi ứng dụng nhận IPN).
+ *
+ * /processPayment chỉ nhận đặt phòng PendingPayment của chính người đang đăng
+ * nhập, nên công cụ cần một danh sách đặt phòng thật: mỗi dòng
+ * "bookingId,userID[,password]", lấy ví dụ từ
+ * SELECT id, userID FROM bookings WHERE status = 'PendingPayment'
+ * (các tài khoản phải đã xác thực). Mỗi luồng đăng nhập /login một lần cho mỗi
+ * userID và giữ cookie phiên riêng. Mỗi đặt phòng chỉ thanh toán được một lần,
+ * nên sau mỗi lượt chạy phải tạo lại danh sách.
+ *
+ * Ứng dụng cần chạy với
+ * -Dhomestay.momo.endpoint=http://localhost:9099/v2/gateway/api/create.
+ *
+ * Cách chạy:
+ * java -cp classes:gson.jar payment.sim.MoMoLoadDriver
+ *      --app http://localhost:8080/ASSPRJ301_F-Final_Last --bookings bookings.csv --concurrency 200
+ *      [--password mật-khẩu-chung] [--payments 5000] [--ipnTimeoutSeconds 60]
+ */
+public final class MoMoLoadDriver {
+
+    private final String appUrl;
+    private final List<Payer> payers;
+    private final Map<Integer, Integer> indexByBooking = new HashMap<>();
+    private final int payments;
+    private final int concurrency;
+    private final long ipnTimeoutSeconds;
+
+    private final AtomicLongArray startNanos;
+    private final AtomicLongArray requestNanos;
+    private final AtomicLongArray endToEndNanos;
+    private final AtomicIntegerArray ipnSeen;
+    private final Map<Integer, AtomicInteger> statusCounts = new ConcurrentHashMap<>();
+    private final AtomicInteger ipnDuplicates = new AtomicInteger();
+    private final AtomicInteger ipnErrors = new AtomicInteger();
+    private final AtomicInteger loginFailures = new AtomicInteger();
+    private CountDownLatch ipnLatch;
+
+    // Một đặt phòng PendingPayment và tài khoản sở hữu nó
+    private static final class Payer {
+
+        final int bookingId;
+        final String userId;
+        final String password;
+
+        Payer(int bookingId, String userId, String password) {
+            this.bookingId = bookingId;
+            this.userId = userId;
+            this.password = password;
+        }
+    }
+
+    MoMoLoadDriver(String appUrl, List<Payer> payers, int concurrency, long ipnTimeoutSeconds) {
+        this.appUrl = appUrl.endsWith("/") ? appUrl.substring(0, appUrl.length() - 1) : appUrl;
+        this.payers = payers;
+        this.payments = payers.size();
+        this.concurrency = concurrency;
+        this.ipnTimeoutSeconds = ipnTimeoutSeconds;
+        for (int i = 0; i < payments; i++) {
+            indexByBooking.put(payers.get(i).bookingId, i);
+        }
+        this.startNanos = new AtomicLongArray(payments);
+        this.requestNanos = new AtomicLongArray(payments);
+        this.endToEndNanos = new AtomicLongArray(payments);
+        this.ipnSeen = new AtomicIntegerArray(payments);
+    }
+
+    void run() throws Exception {
+        MoMoSimulator simulator = new MoMoSimulator(new MoMoSimulator.Options());
+        simulator.setObserver(this::onIpn);
+        simulator.start();
+        System.out.println("MoMo simulator: " + simulator.getEndpoint());
+        System.out.println("Driving " + payments + " payment(s) against " + appUrl + " with concurrency " + concurrency);
+
+        ipnLatch = new CountDownLatch(payments);
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        long begin = System.nanoTime();
+        for (int t = 0; t < concurrency; t++) {
+            clients.execute(() -> {
+                // Cookie phiên của luồng này theo userID
+                Map<String, String> sessions = new HashMap<>();
+                int i;
+                while ((i = next.getAndIncrement()) < payments) {
+                    pay(i, sessions);
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.HOURS);
+        long requestsDone = System.nanoTime();
+
+        // Chỉ chờ IPN của các yêu cầu đã được MoMo giả lập nhận
+        int accepted = count(statusCounts.get(HttpURLConnection.HTTP_MOVED_TEMP));
+        for (int i = accepted; i < payments; i++) {
+            ipnLatch.countDown();
+        }
+        boolean allIpn = ipnLatch.await(ipnTimeoutSeconds, TimeUnit.SECONDS);
+        long ipnDone = System.nanoTime();
+        simulator.stop();
+
+        report(begin, requestsDone, ipnDone, accepted, allIpn, simulator.getStatistics());
+    }
+
+    private void pay(int i, Map<String, String> sessions) {
+        Payer payer = payers.get(i);
+        String cookie = sessions.get(payer.userId);
+        if (cookie == null) {
+            cookie = login(payer);
+            if (cookie == null) {
+                loginFailures.incrementAndGet();
+                return;
+            }
+            sessions.put(payer.userId, cookie);
+        }
+        long start = System.nanoTime();
+        startNanos.set(i, start);
+        int status;
+        try {
+            HttpURLConnection conn = post("/processPayment", "bookingId=" + payer.bookingId, cookie);
+            status = conn.getResponseCode();
+            drain(status < 400 ? conn.getInputStream() : conn.getErrorStream());
+        } catch (IOException e) {
+            status = -1;
+        }
+        requestNanos.set(i, System.nanoTime() - start);
+        statusCounts.computeIfAbsent(status, k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    // Đăng nhập như trình duyệt; trả về cookie JSESSIONID, null nếu sai tài khoản
+    private String login(Payer payer) {
+        try {
+            String form = "action=login&txtUsername=" + URLEncoder.encode(payer.userId, "UTF-8")
+                    + "&txtPassword=" + URLEncoder.encode(payer.password, "UTF-8");
+            HttpURLConnection conn = post("/login", form, null);
+            int status = conn.getResponseCode();
+            drain(status < 400 ? conn.getInputStream() : conn.getErrorStream());
+            // Đăng nhập đúng thì chuyển hướng về trang chủ, sai thì hiển thị lại trang đăng nhập
+            if (status != HttpURLConnection.HTTP_MOVED_TEMP) {
+                return null;
+            }
+            List<String> cookies = conn.getHeaderFields().get("Set-Cookie");
+            if (cookies != null) {
+                for (String c : cookies) {
+                    if (c.startsWith("JSESSIONID=")) {
+                        int end = c.indexOf(';');
+                        return end > 0 ? c.substring(0, end) : c;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // coi như đăng nhập thất bại
+        }
+        return null;
+    }
+
+    private HttpURLConnection post(String path, String form, String cookie) throws IOException {
+        byte[] body = form.getBytes(StandardCharsets.UTF_8);
+        HttpURLConnection conn = (HttpURLConnection) new URL(appUrl + path).openConnection();
+        conn.setInstanceFollowRedirects(false);
+        conn.setConnectTimeout(5000);
+        conn.setReadTimeout(30000);
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        if (cookie != null) {
+            conn.setRequestProperty("Cookie", cookie);
+        }
+        conn.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(body);
+        }
+        return conn;
+    }
+
+    private void onIpn(String orderId, int httpStatus, boolean duplicate) {
+        if (duplicate) {
+            ipnDuplicates.incrementAndGet();
+            return;
+        }
+        Integer bookingId = PaymentEventProcessor.parseBookingId(orderId);
+        Integer index = bookingId != null ? indexByBooking.get(bookingId) : null;
+        if (index == null || !ipnSeen.compareAndSet(index, 0, 1)) {
+            return;
+        }
+        int i = index;
+        if (httpStatus >= 200 && httpStatus < 300) {
+            endToEndNanos.set(i, System.nanoTime() - startNanos.get(i));
+        } else {
+            ipnErrors.incrementAndGet();
+        }
+        ipnLatch.countDown();
+    }
+
+    private void report(long begin, long requestsDone, long ipnDone, int accepted, boolean allIpn, Map<String, Object> simulatorStats) {
+        double requestSeconds = (requestsDone - begin) / 1e9;
+        double totalSeconds = (ipnDone - begin) / 1e9;
+        long[] requests = collect(requestNanos);
+        long[] endToEnd = collect(endToEndNanos);
+
+        System.out.println();
+        System.out.printf("/processPayment: %d request(s) in %.2f s, %.1f req/s%n", payments, requestSeconds, payments / requestSeconds);
+        System.out.println("  status codes: " + new TreeMap<>(statusCounts) + ", login failures: " + loginFailures.get());
+        System.out.println("  latency: " + summary(requests));
+        System.out.printf("end-to-end (request -> IPN acknowledged): %d of %d accepted payment(s) in %.2f s, %.1f payments/s%s%n",
+                endToEnd.length, accepted, totalSeconds, endToEnd.length / totalSeconds, allIpn ? "" : " (timed out waiting for IPN)");
+        System.out.println("  latency: " + summary(endToEnd));
+        System.out.println("  IPN errors: " + ipnErrors.get() + ", duplicate IPNs sent: " + ipnDuplicates.get());
+        System.out.println("simulator: " + simulatorStats);
+    }
+
+    private static long[] collect(AtomicLongArray values) {
+        long[] result = new long[values.length()];
+        int n = 0;
+        for (int i = 0; i < values.length(); i++) {
+            if (values.get(i) > 0) {
+                result[n++] = values.get(i);
+            }
+        }
+        result = Arrays.copyOf(result, n);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static String summary(long[] sorted) {
+        if (sorted.length == 0) {
+            return "no samples";
+        }
+        return String.format("p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms",
+                percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99), sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    private static int count(AtomicInteger counter) {
+        return counter != null ? counter.get() : 0;
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) {
+            return;
+        }
+        try (InputStream stream = in) {
+            byte[] buffer = new byte[4096];
+            while (stream.read(buffer) != -1) {
+                // bỏ qua
+            }
+        }
+    }
+
+    // Dòng "bookingId,userID[,password]"; dòng không bắt đầu bằng số (tiêu đề, chú thích) bị bỏ qua
+    private static List<Payer> readPayers(String file, String defaultPassword, int limit) throws IOException {
+        List<Payer> payers = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            String[] parts = line.trim().split("\\s*,\\s*");
+            if (payers.size() >= limit || parts.length < 2 || !parts[0].matches("\\d+")) {
+                continue;
+            }
+            String password = parts.length > 2 ? parts[2] : defaultPassword;
+            if (password == null) {
+                throw new IllegalArgumentException("No password for " + parts[1] + "; add a third column or --password");
+            }
+            payers.add(new Payer(Integer.parseInt(parts[0]), parts[1], password));
+        }
+        return payers;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String app = "http://localhost:8080/ASSPRJ301_F-Final_Last";
+        String bookings = null;
+        String password = null;
+        int payments = Integer.MAX_VALUE;
+        int concurrency = 100;
+        long ipnTimeout = 60;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--app":
+                    app = args[i + 1];
+                    break;
+                case "--bookings":
+                    bookings = args[i + 1];
+                    break;
+                case "--password":
+                    password = args[i + 1];
+                    break;
+                case "--payments":
+                    payments = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--concurrency":
+                    concurrency = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--ipnTimeoutSeconds":
+                    ipnTimeout = Long.parseLong(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (bookings == null) {
+            throw new IllegalArgumentException("--bookings is required");
+        }
+        List<Payer> payers = readPayers(bookings, password, payments);
+        if (payers.isEmpty()) {
+            throw new IllegalArgumentException("No bookings in " + bookings);
+        }
+        new MoMoLoadDriver(app, payers, concurrency, ipnTimeout).run();
+        System.exit(0);
+    }
+}
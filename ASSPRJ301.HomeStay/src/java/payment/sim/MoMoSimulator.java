@@ -0,0 +1,398 @@
+package payment.sim;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import payment.MoMoCallback;
+import payment.MoMoRequest;
+import payment.MoMoSignature;
+
+/**
+ * MoMo giả lập chạy local để kiểm thử tải đường thanh toán mà không cần
+ * test-payment.momo.vn.
+ *
+ * - POST /v2/gateway/api/create: nhận JSON MoMoRequest, kiểm tra chữ ký, trả
+ *   về payUrl sau độ trễ cấu hình được (có thể giả lập lỗi 500 theo tỉ lệ).
+ * - Sau đó gửi IPN có chữ ký HmacSHA256 (cùng cách ký với MoMo) tới ipnUrl
+ *   của yêu cầu, có giới hạn tốc độ, tỉ lệ thanh toán thất bại và tỉ lệ gửi
+ *   trùng IPN; IPN lỗi được gửi lại vài lần.
+ * - GET /pay?orderId=...: chuyển hướng người dùng về redirectUrl kèm tham số
+ *   có chữ ký, như khi thanh toán xong trên MoMo.
+ *
+ * Trỏ ứng dụng vào giả lập bằng
+ * -Dhomestay.momo.endpoint=http://localhost:9099/v2/gateway/api/create.
+ * Có thể chạy riêng (main), nhúng trong ứng dụng (-Dhomestay.momosim.enabled=true)
+ * hoặc trong MoMoLoadDriver.
+ *
+ * Giả lập ký kết quả thành công bằng secret key thật nên mặc định chỉ nghe
+ * trên 127.0.0.1; muốn mở cho máy khác phải đặt -Dhomestay.momosim.host.
+ */
+public final class MoMoSimulator {
+
+    private static final Logger LOGGER = Logger.getLogger(MoMoSimulator.class.getName());
+
+    public static final String CREATE_PATH = "/v2/gateway/api/create";
+    public static final String PAY_PATH = "/pay";
+
+    private static final int RESULT_SUCCESS = 0;
+    private static final int RESULT_BAD_SIGNATURE = 11;
+    private static final int RESULT_USER_DECLINED = 1006;
+    private static final int RESULT_SYSTEM_ERROR = 99;
+    private static final int MAX_REMEMBERED_ORDERS = 10000;
+
+    private static final Gson GSON = new Gson();
+
+    // Cấu hình giả lập, mặc định đọc từ -Dhomestay.momosim.*
+    public static final class Options {
+
+        // Địa chỉ nghe; mặc định loopback để máy khác không gọi được
+        public String host = System.getProperty("homestay.momosim.host", "127.0.0.1");
+        public int port = Integer.getInteger("homestay.momosim.port", 9099);
+        public int threads = Integer.getInteger("homestay.momosim.threads", 64);
+        public long createLatencyMillis = Long.getLong("homestay.momosim.createLatencyMillis", 50L);
+        public long latencyJitterMillis = Long.getLong("homestay.momosim.latencyJitterMillis", 20L);
+        public double createFailureRatio = doubleProperty("homestay.momosim.createFailureRatio", 0.0);
+        public long ipnDelayMillis = Long.getLong("homestay.momosim.ipnDelayMillis", 200L);
+        // 0 = không giới hạn
+        public double ipnRatePerSecond = doubleProperty("homestay.momosim.ipnRatePerSecond", 0.0);
+        public double paymentFailureRatio = doubleProperty("homestay.momosim.paymentFailureRatio", 0.0);
+        public double duplicateIpnRatio = doubleProperty("homestay.momosim.duplicateIpnRatio", 0.0);
+        public int ipnRetries = Integer.getInteger("homestay.momosim.ipnRetries", 3);
+        public int ipnThreads = Integer.getInteger("homestay.momosim.ipnThreads", 16);
+
+        private static double doubleProperty(String name, double defaultValue) {
+            String value = System.getProperty(name);
+            return value != null ? Double.parseDouble(value) : defaultValue;
+        }
+    }
+
+    // Nhận kết quả mỗi lần gửi IPN (dùng cho MoMoLoadDriver đo độ trễ đầu-cuối)
+    public interface IpnObserver {
+
+        void onIpnDelivered(String orderId, int httpStatus, boolean duplicate);
+    }
+
+    private final Options options;
+    private HttpServer server;
+    private ExecutorService httpThreads;
+    private ScheduledExecutorService ipnSender;
+    private volatile IpnObserver observer;
+
+    // Callback đã ký của các đơn gần đây, để /pay chuyển hướng về redirectUrl
+    private final Map<String, JsonObject> recentOrders = new LinkedHashMap<String, JsonObject>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JsonObject> eldest) {
+            return size() > MAX_REMEMBERED_ORDERS;
+        }
+    };
+
+    private final AtomicLong transIds = new AtomicLong(System.currentTimeMillis());
+    private final AtomicLong nextIpnSlot = new AtomicLong();
+    private final AtomicLong createRequests = new AtomicLong();
+    private final AtomicLong createFailures = new AtomicLong();
+    private final AtomicLong badSignatures = new AtomicLong();
+    private final AtomicLong ipnSent = new AtomicLong();
+    private final AtomicLong ipnFailed = new AtomicLong();
+
+    public MoMoSimulator(Options options) {
+        this.options = options;
+    }
+
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        AtomicInteger ids = new AtomicInteger();
+        httpThreads = Executors.newFixedThreadPool(options.threads, r -> {
+            Thread t = new Thread(r, "momo-sim-http-" + ids.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        ipnSender = Executors.newScheduledThreadPool(options.ipnThreads, r -> {
+            Thread t = new Thread(r, "momo-sim-ipn-" + ids.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        server = HttpServer.create(new InetSocketAddress(options.host, options.port), 1024);
+        server.createContext(CREATE_PATH, this::handleCreate);
+        server.createContext(PAY_PATH, this::handlePay);
+        server.setExecutor(httpThreads);
+        server.start();
+        LOGGER.log(Level.INFO, "MoMo simulator listening on {0}:{1} ({2})",
+                new Object[]{options.host, String.valueOf(options.port), getEndpoint()});
+    }
+
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        ipnSender.shutdownNow();
+        httpThreads.shutdownNow();
+        server = null;
+    }
+
+    public String getEndpoint() {
+        return baseUrl() + CREATE_PATH;
+    }
+
+    // Địa chỉ để gọi tới giả lập: host đã cấu hình, hoặc localhost nếu nghe trên mọi interface
+    private String baseUrl() {
+        String host = "0.0.0.0".equals(options.host) || "::".equals(options.host) ? "localhost" : options.host;
+        return "http://" + (host.indexOf(':') >= 0 ? "[" + host + "]" : host) + ":" + options.port;
+    }
+
+    public void setObserver(IpnObserver observer) {
+        this.observer = observer;
+    }
+
+    private void handleCreate(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "{\"message\":\"Method not allowed\"}");
+                return;
+            }
+            createRequests.incrementAndGet();
+            MoMoRequest request;
+            try {
+                request = GSON.fromJson(new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8), MoMoRequest.class);
+            } catch (JsonParseException e) {
+                request = null;
+            }
+            if (request == null || request.signature == null || !request.signature.equals(MoMoSignature.signRequest(request))) {
+                badSignatures.incrementAndGet();
+                send(exchange, 400, result(request, RESULT_BAD_SIGNATURE, "Chữ ký không hợp lệ").toString());
+                return;
+            }
+
+            sleep(options.createLatencyMillis, options.latencyJitterMillis);
+            if (ThreadLocalRandom.current().nextDouble() < options.createFailureRatio) {
+                createFailures.incrementAndGet();
+                send(exchange, 500, result(request, RESULT_SYSTEM_ERROR, "Simulated gateway failure").toString());
+                return;
+            }
+
+            JsonObject callback = signedCallback(request);
+            synchronized (recentOrders) {
+                recentOrders.put(request.orderId, callback);
+            }
+            JsonObject response = result(request, RESULT_SUCCESS, "Thành công.");
+            response.addProperty("payUrl", baseUrl() + PAY_PATH + "?orderId=" + encode(request.orderId));
+            send(exchange, 200, response.toString());
+
+            scheduleIpn(request.ipnUrl, callback, false);
+            if (ThreadLocalRandom.current().nextDouble() < options.duplicateIpnRatio) {
+                scheduleIpn(request.ipnUrl, callback, true);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "MoMo simulator create error", e);
+            send(exchange, 500, "{\"resultCode\":" + RESULT_SYSTEM_ERROR + "}");
+        }
+    }
+
+    private void handlePay(HttpExchange exchange) throws IOException {
+        String orderId = queryParam(exchange.getRequestURI().getRawQuery(), "orderId");
+        JsonObject callback;
+        synchronized (recentOrders) {
+            callback = orderId != null ? recentOrders.get(orderId) : null;
+        }
+        if (callback == null) {
+            send(exchange, 404, "{\"message\":\"Unknown order\"}");
+            return;
+        }
+        StringBuilder location = new StringBuilder(callback.get("redirectUrl").getAsString()).append('?');
+        boolean first = true;
+        for (Map.Entry<String, JsonElement> e : callback.entrySet()) {
+            if ("redirectUrl".equals(e.getKey()) || "ipnUrl".equals(e.getKey())) {
+                continue;
+            }
+            if (!first) {
+                location.append('&');
+            }
+            location.append(e.getKey()).append('=').append(encode(e.getValue().getAsString()));
+            first = false;
+        }
+        exchange.getResponseHeaders().set("Location", location.toString());
+        exchange.sendResponseHeaders(302, -1);
+        exchange.close();
+    }
+
+    // Tạo callback IPN đã ký cho một yêu cầu; redirectUrl/ipnUrl chỉ dùng nội bộ, không gửi cho ứng dụng
+    private JsonObject signedCallback(MoMoRequest request) throws IOException {
+        boolean declined = ThreadLocalRandom.current().nextDouble() < options.paymentFailureRatio;
+        JsonObject json = new JsonObject();
+        json.addProperty("partnerCode", request.partnerCode);
+        json.addProperty("orderId", request.orderId);
+        json.addProperty("requestId", request.requestId);
+        json.addProperty("amount", request.amount);
+        json.addProperty("orderInfo", request.orderInfo);
+        json.addProperty("orderType", "momo_wallet");
+        json.addProperty("transId", transIds.incrementAndGet());
+        json.addProperty("resultCode", declined ? RESULT_USER_DECLINED : RESULT_SUCCESS);
+        json.addProperty("message", declined ? "Giao dịch bị từ chối bởi người dùng." : "Thành công.");
+        json.addProperty("payType", "qr");
+        json.addProperty("responseTime", System.currentTimeMillis());
+        json.addProperty("extraData", request.extraData != null ? request.extraData : "");
+        json.addProperty("signature", MoMoSignature.signCallback(GSON.fromJson(json, MoMoCallback.class)));
+        json.addProperty("redirectUrl", request.redirectUrl);
+        json.addProperty("ipnUrl", request.ipnUrl);
+        return json;
+    }
+
+    // Lên lịch gửi IPN sau ipnDelayMillis, giãn cách theo ipnRatePerSecond nếu có giới hạn tốc độ
+    private void scheduleIpn(String ipnUrl, JsonObject callback, boolean duplicate) {
+        long now = System.nanoTime();
+        long due = now + TimeUnit.MILLISECONDS.toNanos(options.ipnDelayMillis);
+        if (options.ipnRatePerSecond > 0) {
+            long interval = (long) (1_000_000_000L / options.ipnRatePerSecond);
+            due = nextIpnSlot.accumulateAndGet(due, (previous, wanted) -> Math.max(previous + interval, wanted));
+        }
+        JsonObject body = callback.deepCopy();
+        body.remove("redirectUrl");
+        body.remove("ipnUrl");
+        byte[] payload = body.toString().getBytes(StandardCharsets.UTF_8);
+        String orderId = callback.get("orderId").getAsString();
+        ipnSender.schedule(() -> deliverIpn(ipnUrl, orderId, payload, duplicate, 0), due - now, TimeUnit.NANOSECONDS);
+    }
+
+    private void deliverIpn(String ipnUrl, String orderId, byte[] payload, boolean duplicate, int attempt) {
+        int status = -1;
+        try {
+            HttpURLConnection conn = (HttpURLConnection) new URL(ipnUrl).openConnection();
+            conn.setConnectTimeout(3000);
+            conn.setReadTimeout(10000);
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+            conn.setFixedLengthStreamingMode(payload.length);
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(payload);
+            }
+            status = conn.getResponseCode();
+            try (InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+                if (in != null) {
+                    readAll(in);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "IPN to " + ipnUrl + " failed", e);
+        }
+
+        if (status >= 200 && status < 300) {
+            ipnSent.incrementAndGet();
+        } else if (attempt < options.ipnRetries && !ipnSender.isShutdown()) {
+            // MoMo gửi lại IPN khi ứng dụng không trả lời 2xx
+            ipnSender.schedule(() -> deliverIpn(ipnUrl, orderId, payload, duplicate, attempt + 1),
+                    1000L << attempt, TimeUnit.MILLISECONDS);
+            return;
+        } else {
+            ipnFailed.incrementAndGet();
+        }
+        IpnObserver o = observer;
+        if (o != null) {
+            o.onIpnDelivered(orderId, status, duplicate);
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("endpoint", getEndpoint());
+        stats.put("createRequests", createRequests.get());
+        stats.put("createFailures", createFailures.get());
+        stats.put("badSignatures", badSignatures.get());
+        stats.put("ipnSent", ipnSent.get());
+        stats.put("ipnFailed", ipnFailed.get());
+        return stats;
+    }
+
+    private static JsonObject result(MoMoRequest request, int resultCode, String message) {
+        JsonObject json = new JsonObject();
+        if (request != null) {
+            json.addProperty("partnerCode", request.partnerCode);
+            json.addProperty("orderId", request.orderId);
+            json.addProperty("requestId", request.requestId);
+            json.addProperty("amount", request.amount);
+        }
+        json.addProperty("responseTime", System.currentTimeMillis());
+        json.addProperty("resultCode", resultCode);
+        json.addProperty("message", message);
+        return json;
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static void sleep(long millis, long jitter) throws InterruptedException {
+        long delay = millis + (jitter > 0 ? ThreadLocalRandom.current().nextLong(-jitter, jitter + 1) : 0);
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+
+    private static String encode(String value) throws UnsupportedEncodingException {
+        return URLEncoder.encode(value, "UTF-8");
+    }
+
+    private static String queryParam(String query, String name) throws UnsupportedEncodingException {
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && name.equals(pair.substring(0, eq))) {
+                return URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+            }
+        }
+        return null;
+    }
+
+    // Chạy giả lập độc lập: java -cp ... payment.sim.MoMoSimulator (cấu hình bằng -Dhomestay.momosim.*)
+    public static void main(String[] args) throws Exception {
+        MoMoSimulator simulator = new MoMoSimulator(new Options());
+        simulator.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(simulator::stop));
+        System.out.println("MoMo simulator started: " + simulator.getEndpoint());
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,116 @@
+package payment.sim;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import payment.MoMoCallback;
+import payment.MoMoConfig;
+import payment.MoMoSignature;
+
+/**
+ * So sánh tốc độ và lượng cấp phát bộ nhớ khi ký/kiểm tra chữ ký IPN giữa
+ * MoMoSignature và cách làm cũ (Mac.getInstance + SecretKeySpec mới mỗi lần,
+ * nối chuỗi bằng '+', String.format("%02x") cho từng byte).
+ *
+ * Cách chạy: java -cp classes:gson.jar payment.sim.SignatureBenchmark [giây đo] [giây warmup]
+ * Báo cáo ns/op và byte cấp phát/op (đo bằng com.sun.management.ThreadMXBean
+ * nếu JVM hỗ trợ).
+ */
+public final class SignatureBenchmark {
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        long measureSeconds = args.length > 0 ? Long.parseLong(args[0]) : 5;
+        long warmupSeconds = args.length > 1 ? Long.parseLong(args[1]) : 3;
+        MoMoCallback callback = sampleCallback();
+
+        List<Object[]> cases = new ArrayList<>();
+        cases.add(new Object[]{"legacy sign", (Callable<Object>) () -> legacySign(callback)});
+        cases.add(new Object[]{"MoMoSignature.signCallback", (Callable<Object>) () -> MoMoSignature.signCallback(callback)});
+        cases.add(new Object[]{"legacy verify", (Callable<Object>) () -> legacySign(callback).equals(callback.getSignature())});
+        cases.add(new Object[]{"MoMoSignature.verifyCallback", (Callable<Object>) () -> MoMoSignature.verifyCallback(callback)});
+
+        System.out.printf("%-30s %12s %14s%n", "case", "ns/op", "bytes/op");
+        for (Object[] c : cases) {
+            @SuppressWarnings("unchecked")
+            Callable<Object> op = (Callable<Object>) c[1];
+            run(op, warmupSeconds);
+            long allocatedBefore = allocatedBytes();
+            long[] result = run(op, measureSeconds);
+            long allocated = allocatedBytes() - allocatedBefore;
+            System.out.printf("%-30s %12.1f %14s%n", c[0], (double) result[1] / result[0],
+                    allocatedBefore < 0 ? "n/a" : String.format("%.1f", (double) allocated / result[0]));
+        }
+    }
+
+    // Trả về {số lần chạy, tổng ns}
+    private static long[] run(Callable<Object> op, long seconds) throws Exception {
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        long count = 0;
+        long start = System.nanoTime();
+        long now;
+        do {
+            for (int i = 0; i < 1000; i++) {
+                sink = op.call();
+            }
+            count += 1000;
+            now = System.nanoTime();
+        } while (now < end);
+        return new long[]{count, now - start};
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static MoMoCallback sampleCallback() throws Exception {
+        JsonObject json = new JsonObject();
+        json.addProperty("partnerCode", MoMoConfig.PARTNER_CODE);
+        json.addProperty("orderId", "1024_1711000000000");
+        json.addProperty("requestId", "8f0c5a52-3f4e-4c1b-9d6e-2b7f8f0a1c3d");
+        json.addProperty("amount", 1500000L);
+        json.addProperty("orderInfo", "Thanh toán đặt phòng #1024");
+        json.addProperty("orderType", "momo_wallet");
+        json.addProperty("transId", 4012345678L);
+        json.addProperty("resultCode", 0);
+        json.addProperty("message", "Thành công.");
+        json.addProperty("payType", "qr");
+        json.addProperty("responseTime", 1711000005000L);
+        json.addProperty("extraData", "");
+        Gson gson = new Gson();
+        json.addProperty("signature", legacySign(gson.fromJson(json, MoMoCallback.class)));
+        return gson.fromJson(json, MoMoCallback.class);
+    }
+
+    // Cách ký trước đây trong ProcessPaymentController, giữ lại làm mốc so sánh
+    private static String legacySign(MoMoCallback c) throws Exception {
+        String rawData = "partnerCode=" + c.getPartnerCode()
+                + "&orderId=" + c.getOrderId()
+                + "&requestId=" + c.getRequestId()
+                + "&amount=" + c.getAmount()
+                + "&orderInfo=" + c.getOrderInfo()
+                + "&orderType=" + c.getOrderType()
+                + "&transId=" + c.getTransId()
+                + "&resultCode=" + c.getResultCode()
+                + "&message=" + c.getMessage()
+                + "&payType=" + c.getPayType()
+                + "&responseTime=" + c.getResponseTime()
+                + "&extraData=" + c.getExtraData();
+        javax.crypto.Mac mac = javax.crypto.Mac.getInstance("HmacSHA256");
+        mac.init(new javax.crypto.spec.SecretKeySpec(MoMoConfig.SECRET_KEY.getBytes("UTF-8"), "HmacSHA256"));
+        byte[] result = mac.doFinal(rawData.getBytes("UTF-8"));
+        StringBuilder hex = new StringBuilder();
+        for (byte b : result) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,338 @@
+package utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool kết nối JDBC nhúng, dùng thay cho việc mở kết nối mới qua
+ * DriverManager ở mỗi lần gọi DAO.
+ *
+ * Kết nối trả về là proxy: gọi close() sẽ trả kết nối vật lý về pool thay vì
+ * đóng socket. Pool hỗ trợ kích thước min/max, loại bỏ kết nối rảnh quá lâu,
+ * kiểm tra kết nối khi mượn, phát hiện rò rỉ (lưu stack trace nơi mượn) và
+ * thống kê hoạt động.
+ */
+public class ConnectionPool {
+
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long maxWaitMillis;
+    private final long idleTimeoutMillis;
+    private final int validationTimeoutSeconds;
+    private final long leakThresholdMillis;
+
+    // LIFO: kết nối vừa trả về được dùng lại trước, kết nối cũ nằm cuối để bị loại
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    // Thống kê
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong waitTimeoutCount = new AtomicLong();
+    private final AtomicLong validationFailureCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicInteger waitingThreads = new AtomicInteger();
+
+    public ConnectionPool(String url, String username, String password, int minSize, int maxSize,
+            long maxWaitMillis, long idleTimeoutMillis, int validationTimeoutSeconds, long leakThresholdMillis) {
+        if (minSize < 0 || maxSize <= 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.maxWaitMillis = maxWaitMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "homestay-db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000L, Math.min(idleTimeoutMillis, leakThresholdMillis > 0 ? leakThresholdMillis : idleTimeoutMillis) / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+
+        fillToMinimum();
+    }
+
+    // Mượn một kết nối từ pool, chờ tối đa maxWaitMillis nếu pool đã đầy
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        waitingThreads.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        } finally {
+            waitingThreads.decrementAndGet();
+        }
+        long waited = System.nanoTime() - start;
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        if (!acquired) {
+            waitTimeoutCount.incrementAndGet();
+            throw new SQLException("Timed out after " + maxWaitMillis + " ms waiting for a database connection "
+                    + "(active=" + borrowed.size() + ", max=" + maxSize + ")");
+        }
+
+        try {
+            PooledConnection pc;
+            while ((pc = idle.pollFirst()) != null) {
+                if (validate(pc)) {
+                    break;
+                }
+                validationFailureCount.incrementAndGet();
+                destroy(pc);
+            }
+            if (pc == null) {
+                pc = create();
+            }
+            pc.onBorrow(leakThresholdMillis > 0);
+            borrowed.add(pc);
+            borrowCount.incrementAndGet();
+            return pc.proxy;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection create() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, username, password);
+        totalConnections.incrementAndGet();
+        createdCount.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private boolean validate(PooledConnection pc) {
+        try {
+            if (pc.physical.isClosed()) {
+                return false;
+            }
+            try (Statement st = pc.physical.createStatement()) {
+                st.setQueryTimeout(validationTimeoutSeconds);
+                st.execute("SELECT 1");
+            }
+            return true;
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Pooled connection failed validation", e);
+            return false;
+        }
+    }
+
+    private void destroy(PooledConnection pc) {
+        totalConnections.decrementAndGet();
+        destroyedCount.incrementAndGet();
+        try {
+            pc.physical.close();
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Error closing physical connection", e);
+        }
+    }
+
+    // Gọi từ proxy khi ứng dụng close() kết nối
+    private void release(PooledConnection pc) {
+        if (!borrowed.remove(pc)) {
+            return;
+        }
+        try {
+            boolean reusable = !closed && !pc.physical.isClosed();
+            if (reusable) {
+                if (!pc.physical.getAutoCommit()) {
+                    pc.physical.rollback();
+                    pc.physical.setAutoCommit(true);
+                }
+                if (pc.physical.getTransactionIsolation() != pc.defaultIsolation) {
+                    pc.physical.setTransactionIsolation(pc.defaultIsolation);
+                }
+                pc.physical.clearWarnings();
+                pc.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(pc);
+            } else {
+                destroy(pc);
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Discarding connection that could not be reset", e);
+            destroy(pc);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void housekeep() {
+        try {
+            long now = System.currentTimeMillis();
+
+            // Loại bỏ kết nối rảnh quá lâu, giữ lại tối thiểu minSize
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && totalConnections.get() > minSize) {
+                PooledConnection pc = it.next();
+                if (now - pc.lastUsed > idleTimeoutMillis && idle.remove(pc)) {
+                    destroy(pc);
+                }
+            }
+
+            // Phát hiện rò rỉ: kết nối bị giữ quá ngưỡng mà chưa close()
+            if (leakThresholdMillis > 0) {
+                for (PooledConnection pc : borrowed) {
+                    if (!pc.leakReported && now - pc.borrowedAt > leakThresholdMillis) {
+                        pc.leakReported = true;
+                        leakCount.incrementAndGet();
+                        LOGGER.log(Level.WARNING, "Possible connection leak: connection held for "
+                                + (now - pc.borrowedAt) + " ms by thread " + pc.borrowerThread, pc.borrowSite);
+                    }
+                }
+            }
+
+            fillToMinimum();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Connection pool housekeeping failed", e);
+        }
+    }
+
+    private void fillToMinimum() {
+        while (!closed && totalConnections.get() < minSize && borrowed.size() + idle.size() < maxSize) {
+            try {
+                PooledConnection pc = create();
+                idle.offerLast(pc);
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "Could not pre-fill connection pool: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long borrows = borrowCount.get();
+        stats.put("minSize", minSize);
+        stats.put("maxSize", maxSize);
+        stats.put("total", totalConnections.get());
+        stats.put("active", borrowed.size());
+        stats.put("idle", idle.size());
+        stats.put("waiting", waitingThreads.get());
+        stats.put("borrowed", borrows);
+        stats.put("created", createdCount.get());
+        stats.put("destroyed", destroyedCount.get());
+        stats.put("waitTimeouts", waitTimeoutCount.get());
+        stats.put("validationFailures", validationFailureCount.get());
+        stats.put("leaksDetected", leakCount.get());
+        stats.put("avgWaitMillis", borrows == 0 ? 0.0 : totalWaitNanos.get() / 1_000_000.0 / borrows);
+        stats.put("maxWaitMillis", maxWaitNanos.get() / 1_000_000.0);
+        return stats;
+    }
+
+    public void shutdown() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            destroy(pc);
+        }
+        if (!borrowed.isEmpty()) {
+            LOGGER.log(Level.WARNING, "Shutting down pool with {0} connection(s) still in use", borrowed.size());
+        }
+    }
+
+    // Bọc kết nối vật lý, theo dõi thời điểm mượn/trả
+    private final class PooledConnection implements InvocationHandler {
+
+        private final Connection physical;
+        private final Connection proxy;
+        private final int defaultIsolation;
+        private volatile long lastUsed = System.currentTimeMillis();
+        private volatile long borrowedAt;
+        private volatile String borrowerThread;
+        private volatile Throwable borrowSite;
+        private volatile boolean leakReported;
+        private volatile boolean logicallyClosed = true;
+
+        PooledConnection(Connection physical) throws SQLException {
+            this.physical = physical;
+            this.defaultIsolation = physical.getTransactionIsolation();
+            this.proxy = (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(), new Class<?>[]{Connection.class}, this);
+        }
+
+        void onBorrow(boolean captureStack) {
+            borrowedAt = System.currentTimeMillis();
+            borrowerThread = Thread.currentThread().getName();
+            borrowSite = captureStack ? new Throwable("Connection borrowed here") : null;
+            leakReported = false;
+            logicallyClosed = false;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    if (!logicallyClosed) {
+                        logicallyClosed = true;
+                        release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return logicallyClosed || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical + "]";
+                default:
+                    break;
+            }
+            if (logicallyClosed) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            try {
+                return method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
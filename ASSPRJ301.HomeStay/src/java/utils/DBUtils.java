@@ -5,13 +5,9 @@
  */
 package utils;
 
-import java.io.FileNotFoundException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.Map;
 
 /**
  *
@@ -22,13 +18,52 @@ public class DBUtils {
     private static final String DB_Name = "prj301_1805_slot8";
     private static final String DB_Username = "sa";
     private static final String DB_Password = "12345";
+    private static final String DB_Url = "jdbc:sqlserver://localhost:1433;databaseName=" + DB_Name
+            + ";encrypt=true;trustServerCertificate=true;sendStringParametersAsUnicode=true;characterEncoding=UTF-8";
 
+    // Cấu hình pool, có thể ghi đè bằng -Dhomestay.db.pool.xxx khi khởi động Tomcat
+    private static final int POOL_MIN_SIZE = Integer.getInteger("homestay.db.pool.minSize", 5);
+    private static final int POOL_MAX_SIZE = Integer.getInteger("homestay.db.pool.maxSize", 30);
+    private static final long POOL_MAX_WAIT_MS = Long.getLong("homestay.db.pool.maxWaitMillis", 5000L);
+    private static final long POOL_IDLE_TIMEOUT_MS = Long.getLong("homestay.db.pool.idleTimeoutMillis", 300000L);
+    private static final int POOL_VALIDATION_TIMEOUT_S = Integer.getInteger("homestay.db.pool.validationTimeoutSeconds", 2);
+    private static final long POOL_LEAK_THRESHOLD_MS = Long.getLong("homestay.db.pool.leakThresholdMillis", 60000L);
+
+    private static volatile ConnectionPool pool;
+
+    private static ConnectionPool getPool() throws ClassNotFoundException {
+        ConnectionPool p = pool;
+        if (p == null) {
+            synchronized (DBUtils.class) {
+                p = pool;
+                if (p == null) {
+                    Class.forName("com.microsoft.sqlserver.jdbc.SQLServerDriver");
+                    p = new ConnectionPool(DB_Url, DB_Username, DB_Password,
+                            POOL_MIN_SIZE, POOL_MAX_SIZE, POOL_MAX_WAIT_MS, POOL_IDLE_TIMEOUT_MS,
+                            POOL_VALIDATION_TIMEOUT_S, POOL_LEAK_THRESHOLD_MS);
+                    pool = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    // Lấy kết nối từ pool; close() sẽ trả kết nối về pool
     public static Connection getConnection() throws ClassNotFoundException, SQLException {
-        Connection conn = null;
-        Class.forName("com.microsoft.sqlserver.jdbc.SQLServerDriver");
-        String url = "jdbc:sqlserver://localhost:1433;databaseName=" + DB_Name 
-           + ";encrypt=true;trustServerCertificate=true;sendStringParametersAsUnicode=true;characterEncoding=UTF-8";
-        conn = DriverManager.getConnection(url, DB_Username, DB_Password);
-        return conn;
+        return getPool().getConnection();
+    }
+
+    public static Map<String, Object> getPoolStatistics() throws ClassNotFoundException {
+        return getPool().getStatistics();
+    }
+
+    // Đóng toàn bộ kết nối khi ứng dụng dừng
+    public static void shutdown() {
+        synchronized (DBUtils.class) {
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+            }
+        }
     }
 }
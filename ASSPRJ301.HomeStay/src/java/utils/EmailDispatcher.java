@@ -0,0 +1,179 @@
+package utils;
+
+import dao.EmailOutboxDAO;
+import dto.EmailOutboxDTO;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.mail.internet.AddressException;
+
+/**
+ * Gửi email từ bảng email_outbox ở nền, để request đặt phòng/thanh toán không
+ * phải chờ SMTP.
+ *
+ * Một luồng poller nhận các email đến hạn (có lease) và giao cho một pool
+ * worker cố định. Gửi lỗi thì thử lại với backoff tăng gấp đôi; quá số lần
+ * thử hoặc lỗi không thể sửa (địa chỉ sai) thì chuyển sang dead-letter.
+ */
+public final class EmailDispatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(EmailDispatcher.class.getName());
+
+    private static final int WORKERS = Integer.getInteger("homestay.mail.workers", 4);
+    private static final long POLL_INTERVAL_MS = Long.getLong("homestay.mail.pollMillis", 2000L);
+    private static final int MAX_ATTEMPTS = Integer.getInteger("homestay.mail.maxAttempts", 8);
+    private static final int BASE_BACKOFF_SECONDS = 30;
+    private static final int MAX_BACKOFF_SECONDS = 3600;
+    private static final int LEASE_SECONDS = 300;
+
+    private static final EmailDispatcher INSTANCE = new EmailDispatcher();
+
+    private final EmailOutboxDAO outboxDAO = new EmailOutboxDAO();
+    private ScheduledExecutorService poller;
+    private ThreadPoolExecutor workers;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong deadCount = new AtomicLong();
+
+    private EmailDispatcher() {
+    }
+
+    public static EmailDispatcher getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized void start() {
+        if (poller != null) {
+            return;
+        }
+        AtomicInteger workerIds = new AtomicInteger();
+        workers = new ThreadPoolExecutor(WORKERS, WORKERS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(WORKERS * 2), r -> {
+                    Thread t = new Thread(r, "homestay-mail-" + workerIds.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "homestay-mail-poller");
+            t.setDaemon(true);
+            return t;
+        });
+        poller.scheduleWithFixedDelay(this::poll, POLL_INTERVAL_MS, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        LOGGER.log(Level.INFO, "Email dispatcher started with {0} worker(s)", WORKERS);
+    }
+
+    // Email đang gửi dở sẽ được node khác (hoặc lần khởi động sau) lấy lại khi lease hết hạn
+    public synchronized void stop() {
+        if (poller == null) {
+            return;
+        }
+        poller.shutdownNow();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        poller = null;
+        workers = null;
+    }
+
+    // Gọi sau khi commit một email mới để gửi ngay thay vì chờ lần poll kế tiếp
+    public void nudge() {
+        ScheduledExecutorService p = poller;
+        if (p == null) {
+            return;
+        }
+        try {
+            p.execute(this::poll);
+        } catch (RejectedExecutionException e) {
+            // Đang dừng, bỏ qua
+        }
+    }
+
+    private void poll() {
+        ThreadPoolExecutor pool = workers;
+        int capacity = WORKERS * 2 - inFlight.get();
+        if (pool == null || capacity <= 0) {
+            return;
+        }
+        try {
+            List<EmailOutboxDTO> batch = outboxDAO.claimDue(capacity, LEASE_SECONDS);
+            for (EmailOutboxDTO email : batch) {
+                inFlight.incrementAndGet();
+                try {
+                    pool.execute(() -> deliver(email));
+                } catch (RejectedExecutionException e) {
+                    inFlight.decrementAndGet();
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error polling email outbox", e);
+        }
+    }
+
+    private void deliver(EmailOutboxDTO email) {
+        try {
+            EmailUtils.send(email);
+            outboxDAO.markSent(email.getId());
+            sentCount.incrementAndGet();
+        } catch (AddressException | IllegalArgumentException e) {
+            deadLetter(email, e);
+        } catch (Exception e) {
+            if (email.getAttempts() >= MAX_ATTEMPTS) {
+                deadLetter(email, e);
+            } else {
+                int delay = backoffSeconds(email.getAttempts());
+                outboxDAO.markRetry(email.getId(), delay, e.toString());
+                retryCount.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Email {0} to {1} failed (attempt {2}), retrying in {3}s: {4}",
+                        new Object[]{email.getId(), email.getToEmail(), email.getAttempts(), delay, e.getMessage()});
+            }
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void deadLetter(EmailOutboxDTO email, Exception e) {
+        outboxDAO.markDead(email.getId(), e.toString());
+        deadCount.incrementAndGet();
+        LOGGER.log(Level.SEVERE, "Email " + email.getId() + " to " + email.getToEmail() + " moved to dead-letter", e);
+    }
+
+    // 30s, 60s, 120s... tối đa 1 giờ, cộng trừ 20% để các email lỗi cùng lúc không thử lại cùng lúc
+    private int backoffSeconds(int attempts) {
+        long delay = (long) BASE_BACKOFF_SECONDS << Math.min(20, Math.max(0, attempts - 1));
+        delay = Math.min(MAX_BACKOFF_SECONDS, delay);
+        double jitter = 0.8 + ThreadLocalRandom.current().nextDouble() * 0.4;
+        return (int) Math.round(delay * jitter);
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("running", poller != null);
+        stats.put("workers", WORKERS);
+        stats.put("inFlight", inFlight.get());
+        stats.put("sent", sentCount.get());
+        stats.put("retried", retryCount.get());
+        stats.put("deadLettered", deadCount.get());
+        stats.put("outbox", outboxDAO.countByStatus());
+        stats.put("smtp", EmailUtils.getTransportStatistics());
+        return stats;
+    }
+}
@@ -0,0 +1,192 @@
+package utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mẫu email HTML trong /templates/email, được đọc và biên dịch một lần thành
+ * mảng đoạn văn bản + tên tham số.
+ *
+ * Mỗi mẫu là phần nội dung, bắt đầu bằng các dòng "@title ..." và
+ * "@heading ...", được ghép vào layout.html (thay @title, @heading, @content)
+ * lúc biên dịch. Tham số viết dạng {{name}} và luôn được escape HTML. Bản theo
+ * ngôn ngữ đặt tên name_vi.html, nếu không có thì dùng name.html.
+ */
+public final class EmailTemplates {
+
+    private static final String BASE_PATH = "/templates/email/";
+    private static final String LAYOUT = "layout";
+
+    private static final Map<String, Template> CACHE = new ConcurrentHashMap<>();
+
+    private EmailTemplates() {
+    }
+
+    // Biên dịch trước các mẫu (gọi khi ứng dụng khởi động để lỗi mẫu lộ ra sớm)
+    public static void preload(String... names) {
+        for (String name : names) {
+            get(name, null);
+        }
+    }
+
+    public static String render(String name, Locale locale, Map<String, String> params) {
+        return get(name, locale).render(params);
+    }
+
+    static Template get(String name, Locale locale) {
+        String lang = locale != null ? locale.getLanguage() : "";
+        return CACHE.computeIfAbsent(name + "|" + lang, k -> compile(name, lang));
+    }
+
+    private static Template compile(String name, String lang) {
+        String body = readVariant(name, lang);
+        String layout = readVariant(LAYOUT, lang);
+
+        String title = "";
+        String heading = "";
+        StringBuilder content = new StringBuilder(body.length());
+        for (String line : body.split("\r?\n", -1)) {
+            if (line.startsWith("@title ")) {
+                title = line.substring(7).trim();
+            } else if (line.startsWith("@heading ")) {
+                heading = line.substring(9).trim();
+            } else {
+                content.append(line).append('\n');
+            }
+        }
+        // Bỏ dòng trống cuối file để khớp với layout
+        while (content.length() > 0 && content.charAt(content.length() - 1) == '\n') {
+            content.setLength(content.length() - 1);
+        }
+
+        String source = layout.replace("@title", title).replace("@heading", heading).replace("@content", content);
+        if (source.endsWith("\n")) {
+            source = source.substring(0, source.length() - 1);
+        }
+        return Template.parse(name, source);
+    }
+
+    private static String readVariant(String name, String lang) {
+        String text = lang.isEmpty() ? null : read(BASE_PATH + name + "_" + lang + ".html");
+        if (text == null) {
+            text = read(BASE_PATH + name + ".html");
+        }
+        if (text == null) {
+            throw new IllegalStateException("Email template not found: " + name);
+        }
+        return text;
+    }
+
+    private static String read(String path) {
+        try (InputStream in = EmailTemplates.class.getResourceAsStream(path)) {
+            if (in == null) {
+                return null;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read email template " + path, e);
+        }
+    }
+
+    static void escapeHtml(String value, StringBuilder out) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    out.append("&amp;");
+                    break;
+                case '<':
+                    out.append("&lt;");
+                    break;
+                case '>':
+                    out.append("&gt;");
+                    break;
+                case '"':
+                    out.append("&quot;");
+                    break;
+                case '\'':
+                    out.append("&#39;");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+    }
+
+    // Mẫu đã biên dịch: literals[i] nằm trước keys[i], literal cuối cùng nằm sau tham số cuối
+    static final class Template {
+
+        private final String name;
+        private final String[] literals;
+        private final String[] keys;
+        private final int literalLength;
+
+        private Template(String name, String[] literals, String[] keys) {
+            this.name = name;
+            this.literals = literals;
+            this.keys = keys;
+            int length = 0;
+            for (String literal : literals) {
+                length += literal.length();
+            }
+            this.literalLength = length;
+        }
+
+        static Template parse(String name, String source) {
+            List<String> literals = new ArrayList<>();
+            List<String> keys = new ArrayList<>();
+            int pos = 0;
+            while (true) {
+                int open = source.indexOf("{{", pos);
+                if (open < 0) {
+                    break;
+                }
+                int close = source.indexOf("}}", open + 2);
+                if (close < 0) {
+                    throw new IllegalStateException("Unclosed placeholder in email template " + name);
+                }
+                literals.add(source.substring(pos, open));
+                keys.add(source.substring(open + 2, close).trim());
+                pos = close + 2;
+            }
+            literals.add(source.substring(pos));
+            return new Template(name, literals.toArray(new String[0]), keys.toArray(new String[0]));
+        }
+
+        String render(Map<String, String> params) {
+            int capacity = literalLength;
+            for (String key : keys) {
+                String value = params.get(key);
+                capacity += value != null ? value.length() + 8 : 0;
+            }
+            StringBuilder out = new StringBuilder(capacity);
+            for (int i = 0; i < keys.length; i++) {
+                out.append(literals[i]);
+                String value = params.get(keys[i]);
+                if (value != null) {
+                    escapeHtml(value, out);
+                }
+            }
+            out.append(literals[keys.length]);
+            return out.toString();
+        }
+
+        @Override
+        public String toString() {
+            return "EmailTemplate[" + name + ", " + keys.length + " placeholder(s)]";
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+/**
+ * Session SMTP dùng chung và một pool nhỏ các Transport đã kết nối.
+ *
+ * Mỗi Transport gửi nhiều email trên cùng một kết nối TLS thay vì bắt tay lại
+ * mỗi lần như Transport.send. Kết nối rảnh quá lâu hoặc đã gửi quá nhiều
+ * email sẽ được đóng và mở lại; gửi lỗi do kết nối hỏng thì thử lại một lần
+ * trên kết nối mới.
+ */
+public final class MailTransportPool {
+
+    private static final Logger LOGGER = Logger.getLogger(MailTransportPool.class.getName());
+
+    private static final int MAX_CONNECTIONS = Integer.getInteger("homestay.mail.smtpConnections", 4);
+    private static final long IDLE_TIMEOUT_MS = Long.getLong("homestay.mail.smtpIdleMillis", 60000L);
+    private static final int MAX_MESSAGES_PER_CONNECTION = Integer.getInteger("homestay.mail.messagesPerConnection", 100);
+    private static final long BORROW_TIMEOUT_MS = 30000L;
+    private static final String TIMEOUT_MS = "15000";
+
+    private final Session session;
+    private final String username;
+    private final String password;
+    private final LinkedBlockingDeque<PooledTransport> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits = new Semaphore(MAX_CONNECTIONS, true);
+    private volatile boolean closed;
+
+    private final AtomicLong sendCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong connectCount = new AtomicLong();
+    private final AtomicLong reconnectCount = new AtomicLong();
+    private final AtomicLong totalSendNanos = new AtomicLong();
+    private final AtomicLong maxSendNanos = new AtomicLong();
+
+    MailTransportPool(String host, String port, String username, String password) {
+        Properties props = new Properties();
+        props.put("mail.smtp.auth", "true");
+        props.put("mail.smtp.starttls.enable", "true");
+        props.put("mail.smtp.host", host);
+        props.put("mail.smtp.port", port);
+        props.put("mail.smtp.connectiontimeout", TIMEOUT_MS);
+        props.put("mail.smtp.timeout", TIMEOUT_MS);
+        props.put("mail.smtp.writetimeout", TIMEOUT_MS);
+        this.session = Session.getInstance(props);
+        this.username = username;
+        this.password = password;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    // Gửi một email trên một kết nối trong pool
+    public void send(Message message) throws MessagingException {
+        long start = System.nanoTime();
+        try {
+            sendWithRetry(message);
+            sendCount.incrementAndGet();
+        } catch (MessagingException | RuntimeException e) {
+            failureCount.incrementAndGet();
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            totalSendNanos.addAndGet(elapsed);
+            maxSendNanos.accumulateAndGet(elapsed, Math::max);
+        }
+    }
+
+    private void sendWithRetry(Message message) throws MessagingException {
+        acquire();
+        try {
+            message.saveChanges();
+            PooledTransport pt = borrow();
+            try {
+                pt.transport.sendMessage(message, message.getAllRecipients());
+                release(pt);
+                return;
+            } catch (SendFailedException e) {
+                // Lỗi địa chỉ người nhận: kết nối vẫn dùng được
+                release(pt);
+                throw e;
+            } catch (MessagingException | IllegalStateException e) {
+                // Kết nối có thể đã bị server đóng: bỏ kết nối này và thử lại một lần trên kết nối mới
+                discard(pt);
+                LOGGER.log(Level.FINE, "SMTP send failed on pooled connection, reconnecting", e);
+            }
+
+            reconnectCount.incrementAndGet();
+            PooledTransport fresh = connect();
+            try {
+                fresh.transport.sendMessage(message, message.getAllRecipients());
+                release(fresh);
+            } catch (SendFailedException e) {
+                release(fresh);
+                throw e;
+            } catch (MessagingException | RuntimeException e) {
+                discard(fresh);
+                throw e;
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void acquire() throws MessagingException {
+        if (closed) {
+            throw new MessagingException("Mail transport pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new MessagingException("Timed out waiting for an SMTP connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while waiting for an SMTP connection", e);
+        }
+    }
+
+    // Lấy kết nối rảnh còn dùng được, nếu không có thì mở kết nối mới
+    private PooledTransport borrow() throws MessagingException {
+        long now = System.currentTimeMillis();
+        PooledTransport pt;
+        while ((pt = idle.pollFirst()) != null) {
+            if (now - pt.lastUsed < IDLE_TIMEOUT_MS && pt.transport.isConnected()) {
+                return pt;
+            }
+            discard(pt);
+        }
+        return connect();
+    }
+
+    private PooledTransport connect() throws MessagingException {
+        Transport transport = session.getTransport("smtp");
+        transport.connect(username, password);
+        connectCount.incrementAndGet();
+        return new PooledTransport(transport);
+    }
+
+    private void release(PooledTransport pt) {
+        pt.lastUsed = System.currentTimeMillis();
+        pt.messages++;
+        if (closed || pt.messages >= MAX_MESSAGES_PER_CONNECTION) {
+            discard(pt);
+        } else {
+            idle.offerFirst(pt);
+        }
+    }
+
+    private void discard(PooledTransport pt) {
+        try {
+            pt.transport.close();
+        } catch (MessagingException e) {
+            LOGGER.log(Level.FINE, "Error closing SMTP connection", e);
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long sends = sendCount.get();
+        long failures = failureCount.get();
+        stats.put("maxConnections", MAX_CONNECTIONS);
+        stats.put("idleConnections", idle.size());
+        stats.put("sent", sends);
+        stats.put("failures", failures);
+        stats.put("connects", connectCount.get());
+        stats.put("reconnects", reconnectCount.get());
+        stats.put("avgSendMillis", sends + failures == 0 ? 0.0 : totalSendNanos.get() / 1_000_000.0 / (sends + failures));
+        stats.put("maxSendMillis", maxSendNanos.get() / 1_000_000.0);
+        return stats;
+    }
+
+    public void shutdown() {
+        closed = true;
+        PooledTransport pt;
+        while ((pt = idle.pollFirst()) != null) {
+            discard(pt);
+        }
+    }
+
+    private static final class PooledTransport {
+
+        final Transport transport;
+        volatile long lastUsed = System.currentTimeMillis();
+        int messages;
+
+        PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package utils;
+
+import dto.NotificationDTO;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Phát thông báo mới (sau khi commit) tới những người đang nghe trong cùng
+ * tiến trình, hiện là các kết nối SSE của NotificationStreamController.
+ *
+ * NotificationDAO gọi publish/unreadChanged kèm số chưa đọc mới (-1 nếu không
+ * biết); listener không được chặn luồng gọi (luồng đó có thể đang xử lý
+ * request hoặc chạy tác vụ nền) và không nên tự truy vấn DB. Thông báo
+ * được tạo trên node khác không đi qua đây: trình duyệt sẽ nhận khi kết nối
+ * lại (Last-Event-ID) và bộ đếm được sửa bởi UnreadCounter.reconcile.
+ */
+public final class NotificationHub {
+
+    private static final Logger LOGGER = Logger.getLogger(NotificationHub.class.getName());
+    private static final NotificationHub INSTANCE = new NotificationHub();
+
+    public interface Listener {
+
+        void onNotification(NotificationDTO notification, int unread);
+
+        // Số chưa đọc thay đổi mà không có thông báo mới (đánh dấu đã đọc...)
+        void onUnreadChanged(int unread);
+    }
+
+    private final Map<String, Set<Listener>> listeners = new ConcurrentHashMap<>();
+    private final AtomicLong published = new AtomicLong();
+
+    private NotificationHub() {
+    }
+
+    public static NotificationHub getInstance() {
+        return INSTANCE;
+    }
+
+    public void subscribe(String userId, Listener listener) {
+        listeners.computeIfAbsent(userId, k -> ConcurrentHashMap.newKeySet()).add(listener);
+    }
+
+    public void unsubscribe(String userId, Listener listener) {
+        listeners.computeIfPresent(userId, (k, set) -> {
+            set.remove(listener);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    // Số kết nối đang mở của một người dùng
+    public int count(String userId) {
+        Set<Listener> set = listeners.get(userId);
+        return set != null ? set.size() : 0;
+    }
+
+    public void publish(NotificationDTO notification, int unread) {
+        Set<Listener> set = listeners.get(notification.getUserId());
+        if (set == null) {
+            return;
+        }
+        published.incrementAndGet();
+        for (Listener listener : set) {
+            try {
+                listener.onNotification(notification, unread);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Notification listener failed", e);
+            }
+        }
+    }
+
+    public void unreadChanged(String userId, int unread) {
+        Set<Listener> set = listeners.get(userId);
+        if (set == null) {
+            return;
+        }
+        for (Listener listener : set) {
+            try {
+                listener.onUnreadChanged(unread);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Notification listener failed", e);
+            }
+        }
+    }
+
+    // Người dùng đang có kết nối
+    public Set<String> users() {
+        return Collections.unmodifiableSet(listeners.keySet());
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        int connections = 0;
+        for (Set<Listener> set : listeners.values()) {
+            connections += set.size();
+        }
+        stats.put("users", listeners.size());
+        stats.put("listeners", connections);
+        stats.put("published", published.get());
+        return stats;
+    }
+}
@@ -0,0 +1,123 @@
+package utils;
+
+import dao.NotificationDAO;
+import dao.SchedulerLeaseDAO;
+import java.lang.management.ManagementFactory;
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Giữ bảng notifications không phình mãi: xóa thông báo đã đọc cũ hơn
+ * homestay.notification.retentionDays ngày và chỉ giữ tối đa
+ * homestay.notification.maxPerUser thông báo mới nhất cho mỗi người dùng.
+ *
+ * Chỉ thông báo đã đọc bị xóa, nên số chưa đọc (UnreadCounter) không đổi và
+ * người dùng không mất thông báo chưa xem. Mỗi câu DELETE xóa tối đa
+ * BATCH_SIZE dòng và tự commit, để SQL Server không leo thang khóa lên cả
+ * bảng. Như UnpaidBookingSweeper, AppContextListener gọi purge() định kỳ
+ * trên mọi node và chỉ node giữ lease "notification-retention" mới chạy.
+ */
+public final class NotificationRetention {
+
+    private static final Logger LOGGER = Logger.getLogger(NotificationRetention.class.getName());
+
+    public static final long PURGE_INTERVAL_MINUTES = Long.getLong("homestay.notification.purgeMinutes", 60L);
+    private static final int RETENTION_DAYS = Integer.getInteger("homestay.notification.retentionDays", 90);
+    private static final int MAX_PER_USER = Integer.getInteger("homestay.notification.maxPerUser", 500);
+    // Dưới ngưỡng leo thang khóa 5000 của SQL Server
+    private static final int BATCH_SIZE = Integer.getInteger("homestay.notification.purgeBatchSize", 1000);
+    private static final int USERS_PER_PAGE = 1000;
+    private static final String LEASE_NAME = "notification-retention";
+    private static final int LEASE_SECONDS = (int) TimeUnit.MINUTES.toSeconds(PURGE_INTERVAL_MINUTES * 2) + 60;
+
+    private static final NotificationRetention INSTANCE = new NotificationRetention();
+
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID().toString().substring(0, 8);
+    private final NotificationDAO notificationDAO = new NotificationDAO();
+    private final SchedulerLeaseDAO leaseDAO = new SchedulerLeaseDAO();
+
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong trimmedCount = new AtomicLong();
+    private final AtomicLong runCount = new AtomicLong();
+    private volatile boolean leaseHeld;
+    private volatile long lastRunMillis;
+    private volatile int lastRunRemoved;
+
+    private NotificationRetention() {
+    }
+
+    public static NotificationRetention getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Xóa thông báo đã đọc quá hạn, rồi cắt lịch sử của mọi người dùng vượt
+     * MAX_PER_USER, duyệt người dùng theo từng trang USERS_PER_PAGE người.
+     *
+     * @return số thông báo đã xóa, 0 nếu node khác đang giữ lease
+     */
+    public synchronized int purge() throws Exception {
+        leaseHeld = leaseDAO.tryAcquire(LEASE_NAME, owner, LEASE_SECONDS);
+        if (!leaseHeld) {
+            return 0;
+        }
+        int expired = 0;
+        int deleted;
+        do {
+            deleted = notificationDAO.deleteReadOlderThan(RETENTION_DAYS, BATCH_SIZE);
+            expired += deleted;
+        } while (deleted == BATCH_SIZE && !Thread.currentThread().isInterrupted());
+
+        int trimmed = 0;
+        String after = "";
+        List<String> users;
+        do {
+            users = notificationDAO.getUsersOverCap(after, MAX_PER_USER, USERS_PER_PAGE);
+            for (String userId : users) {
+                do {
+                    deleted = notificationDAO.trimUserHistory(userId, MAX_PER_USER, BATCH_SIZE);
+                    trimmed += deleted;
+                } while (deleted == BATCH_SIZE);
+                after = userId;
+            }
+        } while (users.size() == USERS_PER_PAGE && !Thread.currentThread().isInterrupted());
+
+        runCount.incrementAndGet();
+        lastRunMillis = System.currentTimeMillis();
+        lastRunRemoved = expired + trimmed;
+        expiredCount.addAndGet(expired);
+        trimmedCount.addAndGet(trimmed);
+        LOGGER.log(Level.INFO, "Notification retention removed {0} read notification(s) older than {1} day(s) and {2} over the per-user cap of {3}",
+                new Object[]{expired, RETENTION_DAYS, trimmed, MAX_PER_USER});
+        return expired + trimmed;
+    }
+
+    // Gọi khi dừng ứng dụng
+    public void release() {
+        if (leaseHeld) {
+            leaseDAO.release(LEASE_NAME, owner);
+            leaseHeld = false;
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("owner", owner);
+        stats.put("leaseHeld", leaseHeld);
+        stats.put("retentionDays", RETENTION_DAYS);
+        stats.put("maxPerUser", MAX_PER_USER);
+        stats.put("runs", runCount.get());
+        stats.put("lastRunRemoved", lastRunRemoved);
+        stats.put("expired", expiredCount.get());
+        stats.put("trimmed", trimmedCount.get());
+        stats.put("lastRun", lastRunMillis > 0 ? new Timestamp(lastRunMillis).toString() : null);
+        return stats;
+    }
+}
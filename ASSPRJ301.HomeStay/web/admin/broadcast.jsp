@@ -0,0 +1,39 @@
+<%@page contentType="text/html" pageEncoding="UTF-8"%>
+<!DOCTYPE html>
+<html lang="vi">
+<head>
+    <meta charset="UTF-8">
+    <meta name="viewport" content="width=device-width, initial-scale=1.0">
+    <title>Gửi thông báo</title>
+    <link rel="stylesheet" href="<%= request.getContextPath() %>/assets/css/admin-promotions.css">
+    <link rel="stylesheet" href="https://cdnjs.cloudflare.com/ajax/libs/font-awesome/6.0.0-beta3/css/all.min.css">
+</head>
+<body>
+    <div class="header-container">
+        <%@include file="../header.jsp" %>
+    </div>
+
+    <div class="main-content">
+        <div class="promotions-container">
+            <h1>Gửi thông báo cho tất cả người dùng</h1>
+            <% if (request.getAttribute("errorMessage") != null) { %>
+                <div class="message error"><%= request.getAttribute("errorMessage") %></div>
+            <% } %>
+            <% if (request.getAttribute("successMessage") != null) { %>
+                <div class="message success"><%= request.getAttribute("successMessage") %></div>
+            <% } %>
+            <form action="<%= request.getContextPath() %>/admin/broadcast?action=send" method="POST">
+                <label>Nội dung thông báo:</label>
+                <textarea name="message" rows="4" maxlength="500" required></textarea><br>
+
+                <button type="submit">Gửi thông báo</button>
+            </form>
+            <a href="<%= request.getContextPath() %>/admin/dashboard.jsp" class="back-link"><i class="fas fa-arrow-left"></i> Quay lại Dashboard</a>
+        </div>
+    </div>
+
+    <div class="footer-container">
+        <%@include file="../footer.jsp" %>
+    </div>
+</body>
+</html>
@@ -39,6 +39,7 @@
                     <% } %>
                 </a>
                 <a href="<%= request.getContextPath() %>/admin/promotions" class="menu-item"><i class="fas fa-tag"></i> Quản lý mã khuyến mãi</a>
+                <a href="<%= request.getContextPath() %>/admin/broadcast" class="menu-item"><i class="fas fa-bullhorn"></i> Gửi thông báo</a>
             </div>
             <a href="<%= request.getContextPath() %>/login?action=logout" class="logout-btn"><i class="fas fa-sign-out-alt"></i> Đăng xuất</a>
         </div>
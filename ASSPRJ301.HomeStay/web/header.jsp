@@ -1,6 +1,6 @@
 <%@page contentType="text/html" pageEncoding="UTF-8"%>
 <%@page import="dto.UserDTO"%>
-<%@page import="dao.NotificationDAO"%>
+<%@page import="dao.UnreadCounter"%>
 
 <!DOCTYPE html>
 <html>
@@ -22,11 +22,11 @@
                     <li><a href="<%= request.getContextPath()%>/contact.jsp">Liên hệ</a></li>
                     <%
                         UserDTO user = (UserDTO) session.getAttribute("user");
-                        NotificationDAO notificationDAO = new NotificationDAO();
-                        int unreadCount = (user != null) ? notificationDAO.getUnreadCount(user.getUserID()) : 0;
+                        // Đọc từ bộ đếm trong bộ nhớ, không truy vấn DB ở mỗi lần tải trang
+                        int unreadCount = (user != null) ? UnreadCounter.getInstance().get(user.getUserID()) : 0;
                     %>
                     <li>
-                        <a href="<%= request.getContextPath()%>/notifications.jsp">
+                        <a href="<%= request.getContextPath()%>/notifications.jsp" id="notification-link">
                             Thông báo
                             <% if (unreadCount > 0) { %>
                             <span class="notification-count"><%= unreadCount %></span>
@@ -77,6 +77,51 @@
             <div class="menu-toggle">☰</div>
         </div>
     </header>
+    <% if (user != null) {%>
+    <script>
+        // Nhận thông báo mới và số chưa đọc qua SSE thay vì chờ tải lại trang
+        (function () {
+            if (!window.EventSource || window.homestayNotificationStream) {
+                return;
+            }
+            var source = new EventSource('<%= request.getContextPath()%>/notifications/stream');
+            window.homestayNotificationStream = source;
+
+            function setUnread(count) {
+                var link = document.getElementById('notification-link');
+                if (!link) {
+                    return;
+                }
+                var badge = link.querySelector('.notification-count');
+                if (count > 0) {
+                    if (!badge) {
+                        badge = document.createElement('span');
+                        badge.className = 'notification-count';
+                        link.appendChild(badge);
+                    }
+                    badge.textContent = count;
+                } else if (badge) {
+                    badge.parentNode.removeChild(badge);
+                }
+            }
+
+            source.addEventListener('unread', function (e) {
+                setUnread(JSON.parse(e.data).unread);
+            });
+            source.addEventListener('notification', function (e) {
+                var notification = JSON.parse(e.data);
+                if (typeof notification.unread === 'number') {
+                    setUnread(notification.unread);
+                } else {
+                    // Máy chủ không có số chưa đọc trong bộ nhớ: tăng số đang hiển thị
+                    var badge = document.querySelector('#notification-link .notification-count');
+                    setUnread((badge ? parseInt(badge.textContent, 10) || 0 : 0) + 1);
+                }
+                document.dispatchEvent(new CustomEvent('homestay:notification', {detail: notification}));
+            });
+        })();
+    </script>
+    <% }%>
 
     <script src="<%= request.getContextPath()%>/assets/js/header.js"></script>
 </body>
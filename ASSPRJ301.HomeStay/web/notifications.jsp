@@ -2,6 +2,7 @@
 <%@page import="dto.NotificationDTO"%>
 <%@page import="dao.NotificationDAO"%>
 <%@page import="java.util.List"%>
+<%@page import="java.sql.Timestamp"%>
 <%@page import="java.text.SimpleDateFormat"%>
 <%@page import="dto.UserDTO"%>
 <!DOCTYPE html>
@@ -30,43 +31,56 @@
                 <p class="no-notifications">Vui lòng đăng nhập để xem thông báo!</p>
                 <%
                 } else {
-                    List<NotificationDTO> notifications = notificationDAO.getNotificationsByUserId(user.getUserID());
+                    NotificationDAO notificationDAO = new NotificationDAO();
                     SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
 
-                    // Phân trang
+                    // Phân trang theo con trỏ (created_at, notification_id): before = trang cũ hơn, after = trang mới hơn
                     final int ITEMS_PER_PAGE = 5; // Số lượng thông báo trên mỗi trang
-                    int currentPage = 1;
-                    String pageParam = request.getParameter("page");
-                    if (pageParam != null) {
+                    boolean unreadOnly = "unread".equals(request.getParameter("filter"));
+                    String afterParam = request.getParameter("after");
+                    String cursorParam = afterParam != null ? afterParam : request.getParameter("before");
+                    boolean older = afterParam == null;
+                    Timestamp cursorCreatedAt = null;
+                    int cursorId = 0;
+                    if (cursorParam != null) {
                         try {
-                            currentPage = Integer.parseInt(pageParam);
-                        } catch (NumberFormatException e) {
-                            currentPage = 1;
+                            String[] parts = cursorParam.split("_");
+                            cursorCreatedAt = new Timestamp(Long.parseLong(parts[0]));
+                            cursorId = Integer.parseInt(parts[1]);
+                        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                            cursorCreatedAt = null;
                         }
                     }
 
-                    int totalNotifications = notifications.size();
-                    int totalPages = (int) Math.ceil((double) totalNotifications / ITEMS_PER_PAGE);
-                    if (currentPage < 1) {
-                        currentPage = 1;
+                    List<NotificationDTO> notifications = notificationDAO.getInboxPage(user.getUserID(), unreadOnly, cursorCreatedAt, cursorId, older, ITEMS_PER_PAGE);
+                    boolean more = notifications.size() > ITEMS_PER_PAGE;
+                    if (more) {
+                        notifications = notifications.subList(0, ITEMS_PER_PAGE);
                     }
-                    if (currentPage > totalPages) {
-                        currentPage = totalPages;
-                    }
-
-                    int start = (currentPage - 1) * ITEMS_PER_PAGE;
-                    int end = Math.min(start + ITEMS_PER_PAGE, totalNotifications);
-                    List<NotificationDTO> notificationsToShow = totalNotifications > 0 ? notifications.subList(start, end) : notifications;
-
+                    boolean hasNewer = cursorCreatedAt != null && (older || more);
+                    boolean hasOlder = older ? more : true;
+                    String filterParam = unreadOnly ? "&filter=unread" : "";
+                    String inboxUrl = request.getContextPath() + "/notifications.jsp";
+                %>
+                <div class="inbox-toolbar">
+                    <div class="filter-tabs">
+                        <a href="<%= inboxUrl%>" class="<%= unreadOnly ? "" : "active"%>">Tất cả</a>
+                        <a href="<%= inboxUrl%>?filter=unread" class="<%= unreadOnly ? "active" : ""%>">Chưa đọc</a>
+                    </div>
+                    <button class="btn-mark-all-read" onclick="markAllAsRead()">Đánh dấu tất cả đã đọc</button>
+                </div>
+                <%
                     if (notifications.isEmpty()) {
                 %>
-                <p class="no-notifications">Bạn chưa có thông báo nào.</p>
+                <p class="no-notifications"><%= unreadOnly ? "Bạn không có thông báo chưa đọc." : "Bạn chưa có thông báo nào."%></p>
                 <%
                 } else {
+                    NotificationDTO first = notifications.get(0);
+                    NotificationDTO last = notifications.get(notifications.size() - 1);
                 %>
                 <div class="notification-list">
-                    <% for (NotificationDTO notification : notificationsToShow) {%>
-                    <div class="notification-item <%= notification.isIsRead() ? "" : "unread"%>" id="notification-<%= notification.getNotificationId()%>">
+                    <% for (NotificationDTO notification : notifications) {%>
+                    <div class="notification-item <%= notification.isIsRead() ? "" : "unread"%>" id="notification-<%= notification.getNotificationId()%>" data-id="<%= notification.getNotificationId()%>">
                         <p class="message"><%= notification.getMessage()%></p>
                         <p class="timestamp"><small><%= dateFormat.format(notification.getCreatedAt())%></small></p>
                                 <% if (!notification.isIsRead()) {%>
@@ -78,18 +92,15 @@
 
                 <!-- Phân trang -->
                 <div class="pagination">
-                    <% if (currentPage > 1) {%>
-                    <a href="<%= request.getContextPath()%>/notifications.jsp?page=<%= currentPage - 1%>">Trang trước</a>
+                    <a href="<%= inboxUrl%><%= unreadOnly ? "?filter=unread" : ""%>" class="<%= cursorCreatedAt == null ? "disabled" : ""%>">Mới nhất</a>
+                    <% if (hasNewer) {%>
+                    <a href="<%= inboxUrl%>?after=<%= first.getCreatedAt().getTime()%>_<%= first.getNotificationId()%><%= filterParam%>">Trang trước</a>
                     <% } else { %>
                     <a href="#" class="disabled">Trang trước</a>
                     <% } %>
 
-                    <% for (int i = 1; i <= totalPages; i++) {%>
-                    <a href="<%= request.getContextPath()%>/notifications.jsp?page=<%= i%>" class="<%= (i == currentPage) ? "active" : ""%>"><%= i%></a>
-                    <% } %>
-
-                    <% if (currentPage < totalPages) {%>
-                    <a href="<%= request.getContextPath()%>/notifications.jsp?page=<%= currentPage + 1%>">Trang sau</a>
+                    <% if (hasOlder) {%>
+                    <a href="<%= inboxUrl%>?before=<%= last.getCreatedAt().getTime()%>_<%= last.getNotificationId()%><%= filterParam%>">Trang sau</a>
                     <% } else { %>
                     <a href="#" class="disabled">Trang sau</a>
                     <% } %>
@@ -104,6 +115,27 @@
    
 
         <script>
+            // Thông báo mới từ kênh SSE (header.jsp) được thêm vào đầu danh sách ở trang đầu tiên
+            const onFirstPage = <%= request.getParameter("before") == null && request.getParameter("after") == null%>;
+            document.addEventListener('homestay:notification', function (e) {
+                const notification = e.detail;
+                if (!onFirstPage || $('#notification-' + notification.id).length) {
+                    return;
+                }
+                let list = $('.notification-list');
+                if (!list.length) {
+                    $('.no-notifications').remove();
+                    list = $('<div/>', {class: 'notification-list'}).insertAfter('.inbox-toolbar');
+                }
+                const item = $('<div/>', {class: 'notification-item unread', id: 'notification-' + notification.id, 'data-id': notification.id});
+                item.append($('<p/>', {class: 'message', text: notification.message}));
+                item.append($('<p/>', {class: 'timestamp'}).append($('<small/>', {text: notification.createdAt})));
+                item.append($('<button/>', {class: 'btn-mark-read', text: 'Đánh dấu đã đọc'}).on('click', function () {
+                    markAsRead(notification.id);
+                }));
+                list.prepend(item);
+            });
+
             function markAsRead(notificationId) {
                 $.ajax({
                     url: '<%= request.getContextPath()%>/markNotificationAsRead',
@@ -123,6 +155,32 @@
                 });
             }
 
+            // Trang đầu gửi id mới nhất đang hiển thị để thông báo vừa tới (chưa thấy) vẫn là chưa đọc
+            function markAllAsRead() {
+                let upToId = 0;
+                if (onFirstPage) {
+                    $('.notification-item').each(function () {
+                        upToId = Math.max(upToId, Number($(this).data('id')));
+                    });
+                }
+                $.ajax({
+                    url: '<%= request.getContextPath()%>/markAllNotificationsAsRead',
+                    type: 'POST',
+                    data: upToId > 0 ? {upToId: upToId} : {},
+                    success: function (updated) {
+                        $('.notification-item.unread').each(function () {
+                            if (upToId === 0 || Number($(this).data('id')) <= upToId) {
+                                $(this).removeClass('unread').find('.btn-mark-read').remove();
+                            }
+                        });
+                        showTempMessage('Đã đánh dấu ' + updated + ' thông báo là đã đọc!', 'success');
+                    },
+                    error: function () {
+                        showTempMessage('Có lỗi xảy ra khi đánh dấu đã đọc.', 'error');
+                    }
+                });
+            }
+
             function showTempMessage(message, type) {
                 const tempMessage = $('<div/>', {
                     class: 'temp-message ' + type,
@@ -43,6 +43,16 @@
                         </div>
                     </div>
 
+                    <div class="filter-group">
+                        <label>Ngày nhận phòng:</label>
+                        <input type="date" id="checkIn">
+                    </div>
+
+                    <div class="filter-group">
+                        <label>Ngày trả phòng:</label>
+                        <input type="date" id="checkOut">
+                    </div>
+
                     <div class="filter-group">
                         <label>Tiện ích:</label>
                         <select id="amenities">
@@ -53,6 +63,17 @@
                         </select>
                     </div>
 
+                    <div class="filter-group">
+                        <label>Sắp xếp:</label>
+                        <select id="sort">
+                            <option value="">Mặc định</option>
+                            <option value="price_asc">Giá tăng dần</option>
+                            <option value="price_desc">Giá giảm dần</option>
+                            <option value="rating">Đánh giá cao nhất</option>
+                            <option value="name">Tên A-Z</option>
+                        </select>
+                    </div>
+
                     <button id="filterBtn">Lọc ngay</button>
                 </div>
             </div>
@@ -173,6 +194,9 @@
                     var minPrice = $("#minPrice").val();
                     var maxPrice = $("#maxPrice").val();
                     var amenities = $("#amenities").val();
+                    var checkIn = $("#checkIn").val();
+                    var checkOut = $("#checkOut").val();
+                    var sort = $("#sort").val();
                     var page = <%= currentPage%>; // Lấy trang hiện tại từ server
 
                     $.ajax({
@@ -183,6 +207,9 @@
                             minPrice: minPrice,
                             maxPrice: maxPrice,
                             amenities: amenities,
+                            checkIn: checkIn,
+                            checkOut: checkOut,
+                            sort: sort,
                             page: page // Gửi thêm tham số page
                         },
                         success: function (response) {
@@ -195,7 +222,7 @@
                             });
 
                             // Cập nhật phân trang và kết quả tìm kiếm sau khi lọc
-                            updatePaginationAndResult(searchName, minPrice, maxPrice, amenities);
+                            updatePaginationAndResult(searchName, minPrice, maxPrice, amenities, checkIn, checkOut);
                         },
                         error: function (xhr, status, error) {
                             console.error("Lỗi khi lọc phòng: ", error);
@@ -204,7 +231,7 @@
                 });
 
                 // Hàm cập nhật phân trang và kết quả tìm kiếm
-                function updatePaginationAndResult(searchName, minPrice, maxPrice, amenities) {
+                function updatePaginationAndResult(searchName, minPrice, maxPrice, amenities, checkIn, checkOut) {
                     $.ajax({
                         url: "RoomFilterServlet",
                         type: "GET",
@@ -213,6 +240,8 @@
                             minPrice: minPrice,
                             maxPrice: maxPrice,
                             amenities: amenities,
+                            checkIn: checkIn,
+                            checkOut: checkOut,
                             getTotal: true // Tham số để lấy tổng số phòng
                         },
                         success: function (totalRooms) {
@@ -253,6 +282,9 @@
                     var minPrice = $("#minPrice").val();
                     var maxPrice = $("#maxPrice").val();
                     var amenities = $("#amenities").val();
+                    var checkIn = $("#checkIn").val();
+                    var checkOut = $("#checkOut").val();
+                    var sort = $("#sort").val();
 
                     $.ajax({
                         url: "RoomFilterServlet",
@@ -262,6 +294,9 @@
                             minPrice: minPrice,
                             maxPrice: maxPrice,
                             amenities: amenities,
+                            checkIn: checkIn,
+                            checkOut: checkOut,
+                            sort: sort,
                             page: page
                         },
                         success: function (response) {
@@ -272,7 +307,7 @@
                                 'gap': '30px',
                                 'padding': '20px 0'
                             });
-                            updatePaginationAndResult(searchName, minPrice, maxPrice, amenities); // Cập nhật lại phân trang và kết quả
+                            updatePaginationAndResult(searchName, minPrice, maxPrice, amenities, checkIn, checkOut); // Cập nhật lại phân trang và kết quả
                         },
                         error: function (xhr, status, error) {
                             console.error("Lỗi khi tải trang: ", error);
@@ -140,7 +140,6 @@
                                 <% if (BookingDAO.STATUS_PENDING_PAYMENT.equals(booking.getStatus()) && currentDate.before(booking.getCheckOutDate())) {%>
                                 <form id="paymentForm_<%= booking.getId()%>" action="<%= request.getContextPath()%>/processPayment" method="post" style="display:inline;">
                                     <input type="hidden" name="bookingId" value="<%= booking.getId()%>">
-                                    <input type="hidden" name="amount" value="<%= booking.getTotalPrice()%>">
                                     <button type="submit" class="btn pay"><i class="fas fa-credit-card"></i> Thanh toán</button>
                                 </form>
                                 <form id="cancelForm_<%= booking.getId()%>" action="<%= request.getContextPath()%>/cancelBooking" method="post" style="display:inline;">